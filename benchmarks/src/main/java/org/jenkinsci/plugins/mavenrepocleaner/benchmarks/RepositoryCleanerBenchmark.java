@@ -0,0 +1,112 @@
+package org.jenkinsci.plugins.mavenrepocleaner.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.mavenrepocleaner.CleanupMetrics;
+import org.jenkinsci.plugins.mavenrepocleaner.RemovalListener;
+import org.jenkinsci.plugins.mavenrepocleaner.RepositoryCleaner;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link RepositoryCleaner#clean} over a {@link SyntheticRepository} in a temporary directory.
+ * <p>
+ * The repository is written again before an invocation whenever the previous one removed something, which is not
+ * measured. The page cache is warm after the first invocation, so this measures the CPU, allocation and syscall cost
+ * of the cleanup rather than the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryCleanerBenchmark {
+
+    @Param("10000")
+    public int artifacts;
+
+    @Param("0.2")
+    public double snapshotRatio;
+
+    @Param("3")
+    public int depth;
+
+    /** Share of the artifacts the cleaner removes, 0 to only scan. */
+    @Param({ "0", "0.5" })
+    public double expiredRatio;
+
+    @Param("1")
+    public int parallelism;
+
+    @Param("false")
+    public boolean incremental;
+
+    private Path root;
+    private SyntheticRepository repository;
+    private boolean dirty;
+
+    /**
+     * Reported by JMH as files/s, on top of the cleanups per second of the benchmark itself.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long files;
+        public long removed;
+    }
+
+    @Setup(Level.Trial)
+    public void createRepository() throws IOException {
+        root = Files.createTempDirectory("maven-repo-cleaner-benchmark");
+        repository = new SyntheticRepository(root, artifacts, snapshotRatio, depth, expiredRatio);
+        repository.generate();
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreRepository() throws IOException {
+        if (dirty) {
+            repository.generate();
+            dirty = false;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRepository() throws IOException {
+        repository.delete();
+        Files.deleteIfExists(root);
+    }
+
+    @Benchmark
+    public CleanupMetrics clean(Counters counters) throws IOException {
+        RepositoryCleaner cleaner = new RepositoryCleaner(repository.getNow());
+        cleaner.setParallelism(parallelism);
+        cleaner.setIncremental(incremental);
+        cleaner.clean(root.toFile(), IGNORE);
+        CleanupMetrics metrics = cleaner.getMetrics();
+        counters.files += repository.getFiles();
+        counters.removed += metrics.getFilesRemoved();
+        dirty = metrics.getFilesRemoved() > 0;
+        return metrics;
+    }
+
+    private static final RemovalListener IGNORE = new RemovalListener() {
+        public void removed(String path) {
+        }
+    };
+}
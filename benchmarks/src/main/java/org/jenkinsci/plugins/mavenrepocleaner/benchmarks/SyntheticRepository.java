@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.mavenrepocleaner.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+/**
+ * Writes a local repository laid out like the ones Maven fills, with the same pseudo random content for the same
+ * parameters.
+ * <p>
+ * Every artifact gets a version directory with a jar, a pom, their {@code .sha1} and {@code .md5} checksums and a
+ * {@code _remote.repositories}; snapshots also get a {@code maven-metadata.xml}. Expired artifacts were last accessed
+ * a day before {@link #getNow()}, the others a day after, so a cleaner created with {@link #getNow()} removes exactly
+ * the expired ones.
+ */
+final class SyntheticRepository {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final Path root;
+    private final int artifacts;
+    private final double snapshotRatio;
+    private final int depth;
+    private final double expiredRatio;
+    private final long now = System.currentTimeMillis();
+    private int files;
+
+    /**
+     * @param artifacts number of version directories.
+     * @param snapshotRatio share of them that are snapshots.
+     * @param depth number of directories of the group ids.
+     * @param expiredRatio share of the artifacts old enough to be removed.
+     */
+    SyntheticRepository(Path root, int artifacts, double snapshotRatio, int depth, double expiredRatio) {
+        this.root = root;
+        this.artifacts = artifacts;
+        this.snapshotRatio = snapshotRatio;
+        this.depth = Math.max(1, depth);
+        this.expiredRatio = expiredRatio;
+    }
+
+    long getNow() {
+        return now;
+    }
+
+    /**
+     * Number of files written by the last {@link #generate()}.
+     */
+    int getFiles() {
+        return files;
+    }
+
+    void generate() throws IOException {
+        delete();
+        files = 0;
+        Random random = new Random(42);
+        for (int i = 0; i < artifacts; i++) {
+            Path group = root;
+            for (int level = 0; level < depth; level++) {
+                // a handful of groups per level, like org/apache/maven
+                group = group.resolve("g" + level + "x" + (level == depth - 1 ? i / 20 : (i / 20) % 5));
+            }
+            String artifactId = "artifact" + (i / 4);
+            boolean snapshot = random.nextDouble() < snapshotRatio;
+            String version = "1." + i % 4 + (snapshot ? "-SNAPSHOT" : "");
+            long accessed = random.nextDouble() < expiredRatio ? now - DAY : now + DAY;
+
+            Path dir = group.resolve(artifactId).resolve(version);
+            Files.createDirectories(dir);
+            String base = artifactId + "-" + version;
+            write(dir.resolve(base + ".jar"), 4096 + random.nextInt(64 * 1024), accessed, random);
+            write(dir.resolve(base + ".pom"), 512 + random.nextInt(2048), accessed, random);
+            for (String file : new String[] { base + ".jar", base + ".pom" }) {
+                write(dir.resolve(file + ".sha1"), 40, accessed, random);
+                write(dir.resolve(file + ".md5"), 32, accessed, random);
+            }
+            write(dir.resolve("_remote.repositories"),
+                    (base + ".jar>central=\n" + base + ".pom>central=\n").getBytes(ASCII), accessed);
+            if (snapshot) {
+                write(dir.resolve("maven-metadata.xml"), ("<metadata><version>" + version + "</version></metadata>\n")
+                        .getBytes(ASCII), accessed);
+            }
+        }
+    }
+
+    void delete() throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (!dir.equals(root)) {
+                    Files.delete(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void write(Path file, int size, long accessed, Random random) throws IOException {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        write(file, content, accessed);
+    }
+
+    private void write(Path file, byte[] content, long accessed) throws IOException {
+        Files.write(file, content);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(null, FileTime.fromMillis(accessed), null);
+        files++;
+    }
+}
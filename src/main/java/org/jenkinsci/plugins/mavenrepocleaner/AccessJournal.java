@@ -0,0 +1,150 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The version directories of a local repository that builds resolved artifacts from since the last cleanup, kept in
+ * a {@code .cleanup-journal} file at the root of the repository.
+ * <p>
+ * This stands in for the access time of the artifacts on file systems mounted with {@code noatime} or
+ * {@code relatime}. Builds only ever append a line per directory, so concurrent builds sharing the repository don't
+ * need to coordinate; the cleaner takes the journal away before sweeping.
+ * <p>
+ * In a {@link SharedRepository}, everything recorded is also kept in a {@link ReferenceFilter} of its own, rewritten
+ * on every flush, that outlives the journal for the retention window.
+ */
+final class AccessJournal {
+
+    static final String FILE_NAME = ".cleanup-journal";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Directories recorded but not written yet, by repository. */
+    private final Map<File, Set<String>> pending = new HashMap<File, Set<String>>();
+    /** Everything recorded in the shared repositories, by repository. */
+    private final Map<File, ReferenceFilter> filters = new HashMap<File, ReferenceFilter>();
+    private final String id = UUID.randomUUID().toString();
+
+    /**
+     * Notes that a file resolved by Maven was used, unless it is not laid out in a repository like its coordinates
+     * say, as the output of a module of the reactor.
+     */
+    void record(File file, String groupId, String artifactId) {
+        if (file == null || groupId == null || artifactId == null) {
+            return;
+        }
+        File version = file.getParentFile();
+        File dir = version != null ? version.getParentFile() : null;
+        if (dir == null || !dir.getName().equals(artifactId)) {
+            return;
+        }
+        String[] segments = groupId.split("\\.");
+        for (int i = segments.length - 1; i >= 0; i--) {
+            dir = dir.getParentFile();
+            if (dir == null || !dir.getName().equals(segments[i])) {
+                return;
+            }
+        }
+        File repository = dir.getParentFile();
+        if (repository == null) {
+            return;
+        }
+        Set<String> directories = pending.get(repository);
+        if (directories == null) {
+            directories = new HashSet<String>();
+            pending.put(repository, directories);
+        }
+        directories.add(groupId.replace('.', '/') + '/' + artifactId + '/' + version.getName());
+    }
+
+    /**
+     * Appends what was recorded so far to the journals of the repositories.
+     */
+    void flush() throws IOException {
+        for (Map.Entry<File, Set<String>> entry : pending.entrySet()) {
+            StringBuilder lines = new StringBuilder();
+            for (String directory : entry.getValue()) {
+                lines.append(directory).append('\n');
+            }
+            // a single write of the whole batch, so that lines of concurrent builds don't interleave
+            FileOutputStream out = new FileOutputStream(new File(entry.getKey(), FILE_NAME), true);
+            try {
+                out.write(lines.toString().getBytes(UTF8));
+            } finally {
+                out.close();
+            }
+            File refs = new File(entry.getKey(), SharedRepository.REFS);
+            if (refs.isDirectory()) {
+                ReferenceFilter filter = filters.get(entry.getKey());
+                if (filter == null) {
+                    filter = new ReferenceFilter();
+                    filters.put(entry.getKey(), filter);
+                }
+                for (String directory : entry.getValue()) {
+                    filter.add('/' + directory + '/');
+                }
+                filter.write(new File(refs, id + ".bloom"));
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Repository relative locations of the directories in the journal of a repository, like {@code /g/a/1.0/}, and
+     * starts a new journal for what builds record from now on. Null if there is no journal, no build recorded
+     * anything.
+     */
+    static Set<String> take(Path repository) throws IOException {
+        Path taken = repository.resolve(FILE_NAME + ".taken");
+        try {
+            Files.move(repository.resolve(FILE_NAME), taken, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        Set<String> locations = new HashSet<String>();
+        read(taken, locations);
+        Files.delete(taken);
+        return locations;
+    }
+
+    /**
+     * Like {@link #take(Path)}, but leaves the journal as it is.
+     */
+    static Set<String> read(Path repository) throws IOException {
+        Set<String> locations = new HashSet<String>();
+        try {
+            read(repository.resolve(FILE_NAME), locations);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return locations;
+    }
+
+    private static void read(Path journal, Set<String> locations) throws IOException {
+        BufferedReader r = Files.newBufferedReader(journal, UTF8);
+        try {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.length() > 0) {
+                    locations.add('/' + line + '/');
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+}
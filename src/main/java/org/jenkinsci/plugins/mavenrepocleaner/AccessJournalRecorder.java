@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.Extension;
+import hudson.maven.MavenBuildProxy;
+import hudson.maven.MavenModule;
+import hudson.maven.MavenReporter;
+import hudson.maven.MavenReporterDescriptor;
+import hudson.maven.MojoInfo;
+import hudson.model.BuildListener;
+import hudson.model.Hudson;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records in the {@link AccessJournal} of the local repository what Maven resolved to build a module: its
+ * dependencies, its parent POMs, and the plugins it ran with their own dependencies.
+ * <p>
+ * Automatically added to the modules of maven jobs cleaning up with
+ * {@link RepositoryCleaner.AccessTracking#JOURNAL}, and to those of all maven jobs that use the
+ * {@link SharedRepository} instead of a private one, whatever their own cleanup.
+ */
+public class AccessJournalRecorder extends MavenReporter {
+
+    /** Lives in the maven process, not sent back and forth with the reporter. */
+    private transient AccessJournal journal;
+    private transient Set<String> plugins;
+
+    @Override
+    public boolean preExecute(MavenBuildProxy build, MavenProject pom, MojoInfo mojoInfo, BuildListener listener)
+            throws InterruptedException, IOException {
+        PluginDescriptor plugin = mojoInfo.mojoExecution.getMojoDescriptor().getPluginDescriptor();
+        if (plugins == null) {
+            plugins = new HashSet<String>();
+        }
+        // every mojo of a plugin shares its dependencies
+        if (plugins.add(plugin.getPluginLookupKey() + ':' + plugin.getVersion())) {
+            record(plugin.getPluginArtifact());
+            if (plugin.getArtifacts() != null) {
+                for (Artifact artifact : plugin.getArtifacts()) {
+                    record(artifact);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean postBuild(MavenBuildProxy build, MavenProject pom, BuildListener listener)
+            throws InterruptedException, IOException {
+        for (Artifact artifact : pom.getArtifacts()) {
+            record(artifact);
+        }
+        for (MavenProject parent = pom.getParent(); parent != null; parent = parent.getParent()) {
+            journal().record(parent.getFile(), parent.getGroupId(), parent.getArtifactId());
+        }
+        try {
+            journal().flush();
+        } catch (IOException e) {
+            // the next cleanup falls back to the access time of the artifacts
+            listener.getLogger().println("Failed to record the artifacts used in the local repository: " + e);
+        }
+        return true;
+    }
+
+    private void record(Artifact artifact) {
+        if (artifact != null) {
+            journal().record(artifact.getFile(), artifact.getGroupId(), artifact.getArtifactId());
+        }
+    }
+
+    private AccessJournal journal() {
+        if (journal == null) {
+            journal = new AccessJournal();
+        }
+        return journal;
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    @Extension
+    public static final class DescriptorImpl extends MavenReporterDescriptor {
+
+        public DescriptorImpl() {
+            super(AccessJournalRecorder.class);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Record the artifacts used for the maven repository cleanup";
+        }
+
+        @Override
+        public MavenReporter newAutoInstance(MavenModule module) {
+            MavenRepoCleanerPostBuildTask cleanup =
+                    module.getParent().getPublishersList().get(MavenRepoCleanerPostBuildTask.class);
+            if (cleanup != null && cleanup.getAccessTracking() == RepositoryCleaner.AccessTracking.JOURNAL) {
+                return new AccessJournalRecorder();
+            }
+            // the references of the shared repository come from the builds that use it
+            MavenRepoCleanerProperty.DescriptorImpl d = (MavenRepoCleanerProperty.DescriptorImpl)
+                    Hudson.getInstance().getDescriptor(MavenRepoCleanerProperty.class);
+            if (d != null && d.getSharedRepository() != null && !module.getParent().usesPrivateRepository()) {
+                return new AccessJournalRecorder();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replaces identical artifacts of the job repositories of a node with hard links into a content addressed store of the
+ * node, {@code <store>/<first two digits of the sha1>/<sha1>}, in a single remote call.
+ * <p>
+ * Only release artifacts that were downloaded from a remote repository, according to {@code _remote.repositories},
+ * are linked: Maven never rewrites those in place, while snapshots and locally installed artifacts would be
+ * overwritten for every job sharing them. The {@code .sha1} next to an artifact only points at a candidate: an
+ * artifact enters the store once its content was hashed, and is replaced by a link once its bytes compare equal to
+ * those of the store entry. Artifacts already linked are recognized by their file key and not read again.
+ * <p>
+ * Store entries no longer linked from any repository are removed afterwards. File systems that don't tell the number
+ * of links of a file are left alone.
+ */
+class ArtifactDeduplication implements FilePath.FileCallable<ArtifactDeduplication.Report> {
+
+    static final class Report implements Serializable {
+        int linked;
+        long saved;
+        int purged;
+        boolean unsupported;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final String repository;
+    private final String store;
+
+    /**
+     * @param repository path of the repository, relative to the directory of a job.
+     * @param store where the node keeps the shared copies, on the same file system as the repositories.
+     */
+    ArtifactDeduplication(String repository, String store) {
+        this.repository = repository;
+        this.store = store;
+    }
+
+    public Report invoke(File root, VirtualChannel channel) throws IOException, InterruptedException {
+        Report report = new Report();
+        Path storeDir = Paths.get(store);
+        Files.createDirectories(storeDir);
+        if (!Files.getFileStore(storeDir).supportsFileAttributeView("unix")) {
+            report.unsupported = true;
+            return report;
+        }
+
+        File[] dirs = root.listFiles(DIR_FILTER);
+        if (dirs != null) {
+            Linker linker = new Linker(storeDir, report);
+            for (File dir : dirs) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                File repo = new File(dir, repository);
+                if (repo.isDirectory()) {
+                    Files.walkFileTree(repo.toPath(), linker);
+                }
+            }
+        }
+        purge(storeDir, report);
+        return report;
+    }
+
+    private static final class Linker extends SimpleFileVisitor<Path> {
+        private final Path store;
+        private final Report report;
+        /** Artifacts downloaded from a remote repository, per directory being walked. */
+        private final Deque<Set<String>> remote = new ArrayDeque<Set<String>>();
+        /** File keys of the store entries, an artifact with one of them is already linked. */
+        private final Set<Object> stored = new HashSet<Object>();
+        private final MessageDigest sha1;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private final ByteBuffer other = ByteBuffer.allocateDirect(64 * 1024);
+
+        Linker(Path store, Report report) throws IOException {
+            this.store = store;
+            this.report = report;
+            try {
+                this.sha1 = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            Files.walkFileTree(store, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.fileKey() != null) {
+                        stored.add(attrs.fileKey());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (dir.getFileName().toString().endsWith("-SNAPSHOT")) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            remote.push(readRemoteRepositories(dir.resolve("_remote.repositories")));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            remote.pop();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + file, e);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isRegularFile() && attrs.size() >= MIN_SIZE
+                    && remote.peek().contains(file.getFileName().toString())) {
+                try {
+                    link(file, attrs);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to deduplicate " + file, e);
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        private void link(Path file, BasicFileAttributes attrs) throws IOException {
+            if (attrs.fileKey() == null || stored.contains(attrs.fileKey())) {
+                // already linked
+                return;
+            }
+            String name = file.getFileName().toString();
+            String checksum = readChecksum(file.resolveSibling(name + ".sha1"));
+            String digest = null;
+            if (checksum == null) {
+                checksum = digest = digest(file);
+            }
+            Path entry = store.resolve(checksum.substring(0, 2)).resolve(checksum);
+
+            BasicFileAttributes entryAttrs;
+            try {
+                entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                if (digest == null) {
+                    digest = digest(file);
+                }
+                if (checksum.equals(digest)) {
+                    Files.createDirectories(entry.getParent());
+                    try {
+                        Files.createLink(entry, file);
+                        stored.add(attrs.fileKey());
+                    } catch (FileAlreadyExistsException ignored) {
+                        // picked up by the next sweep
+                    }
+                }
+                return;
+            }
+
+            // the checksum only points at a candidate, a stale or forged one must not swap the content of a job
+            if (entryAttrs.size() != attrs.size() || !sameContent(file, entry)) {
+                return;
+            }
+            Path tmp = file.resolveSibling(name + ".dedup");
+            Files.deleteIfExists(tmp);
+            Files.createLink(tmp, entry);
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            report.linked++;
+            report.saved += attrs.size();
+        }
+
+        private String digest(Path file) throws IOException {
+            sha1.reset();
+            BasicFileAttributeView view = Files.getFileAttributeView(file, BasicFileAttributeView.class);
+            FileTime lastAccess = view.readAttributes().lastAccessTime();
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                buffer.clear();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    sha1.update(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                channel.close();
+                restore(view, lastAccess);
+            }
+            StringBuilder hex = new StringBuilder(40);
+            for (byte b : sha1.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+
+        private boolean sameContent(Path file, Path entry) throws IOException {
+            BasicFileAttributeView fileView = Files.getFileAttributeView(file, BasicFileAttributeView.class);
+            BasicFileAttributeView entryView = Files.getFileAttributeView(entry, BasicFileAttributeView.class);
+            FileTime fileAccess = fileView.readAttributes().lastAccessTime();
+            FileTime entryAccess = entryView.readAttributes().lastAccessTime();
+            FileChannel a = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                FileChannel b = FileChannel.open(entry, StandardOpenOption.READ);
+                try {
+                    while (true) {
+                        buffer.clear();
+                        other.clear();
+                        int read = fill(a, buffer);
+                        if (read != fill(b, other)) {
+                            return false;
+                        }
+                        if (read == 0) {
+                            return true;
+                        }
+                        buffer.flip();
+                        other.flip();
+                        if (!buffer.equals(other)) {
+                            return false;
+                        }
+                    }
+                } finally {
+                    b.close();
+                }
+            } finally {
+                a.close();
+                restore(fileView, fileAccess);
+                restore(entryView, entryAccess);
+            }
+        }
+    }
+
+    private static int fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // until full or at the end
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Puts back the access time a read changed, the cleanup and the warm pool go by it.
+     */
+    private static void restore(BasicFileAttributeView view, FileTime lastAccess) {
+        try {
+            view.setTimes(null, lastAccess, null);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to restore an access time", e);
+        }
+    }
+
+    /**
+     * Names of the files a {@code _remote.repositories} says were downloaded, lines look like
+     * {@code guava-11.0.jar>central=}; locally installed files have no repository.
+     */
+    private static Set<String> readRemoteRepositories(Path file) {
+        Set<String> remote = new HashSet<String>();
+        try {
+            BufferedReader r = Files.newBufferedReader(file, ASCII);
+            try {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    int sep = line.indexOf('>');
+                    if (!line.startsWith("#") && sep > 0 && sep + 1 < line.length() && line.charAt(sep + 1) != '=') {
+                        remote.add(line.substring(0, sep));
+                    }
+                }
+            } finally {
+                r.close();
+            }
+        } catch (NoSuchFileException e) {
+            return Collections.emptySet();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + file, e);
+        }
+        return remote;
+    }
+
+    /**
+     * The checksum stored in a {@code .sha1} file, which may be followed by the name of the file.
+     */
+    private static String readChecksum(Path file) {
+        try {
+            byte[] content = Files.readAllBytes(file);
+            if (content.length < 40) {
+                return null;
+            }
+            String checksum = new String(content, 0, 40, ASCII).toLowerCase();
+            for (int i = 0; i < checksum.length(); i++) {
+                if (Character.digit(checksum.charAt(i), 16) < 0) {
+                    return null;
+                }
+            }
+            return checksum;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Removes the store entries no repository links to anymore.
+     */
+    private static void purge(Path store, final Report report) throws IOException {
+        Files.walkFileTree(store, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Number links = (Number) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+                if (links.intValue() <= 1 && Files.deleteIfExists(file)) {
+                    report.purged++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOGGER.log(Level.FINE, "Failed to read " + file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Smaller files don't save anything worth a link.
+     */
+    private static final long MIN_SIZE = 4096;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final FileFilter DIR_FILTER = new FileFilter() {
+        public boolean accept(File f) {
+            return f.isDirectory();
+        }
+    };
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactDeduplication.class.getName());
+
+    private static final long serialVersionUID = 1L;
+}
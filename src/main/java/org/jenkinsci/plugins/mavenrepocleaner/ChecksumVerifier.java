@@ -0,0 +1,285 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashes the artifacts kept by a sweep against their {@code .sha1} or {@code .md5} files, and removes those that don't
+ * match, like jars truncated by an interrupted download, along with their checksums. Also drops the entries of
+ * {@code _remote.repositories} whose file is gone, so that Maven doesn't trust them anymore.
+ * <p>
+ * The scanners hand over a directory at a time once they are done with it. Directories are verified by a pool of its
+ * own, with a bounded queue: when hashing falls behind, the scanner handing over a directory verifies it itself, which
+ * slows the walk down instead of piling up work.
+ * <p>
+ * Artifacts without checksums, or with a checksum file that doesn't hold one, are left alone: only what is known to
+ * be broken is removed.
+ * <p>
+ * Hashing reads the artifacts, so their access time is put back afterwards: it is what tells the cleanup, the size
+ * budget and the {@link WarmPool} which artifacts builds used. Those that match are marked as verified in the index,
+ * for the next sweep to skip them as long as they don't change.
+ */
+final class ChecksumVerifier {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Files listing where Maven 3 got the artifacts of their directory from. */
+    static final String[] REMOTE_REPOSITORIES = { "_remote.repositories", "_maven.repositories" };
+
+    private final RepositoryCleaner cleaner;
+    private final ThreadPoolExecutor pool;
+    /** What the verifying threads did, counted under the verifier's lock. */
+    private final CleanupMetrics metrics = new CleanupMetrics();
+
+    ChecksumVerifier(RepositoryCleaner cleaner, int threads) {
+        this.cleaner = cleaner;
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Verifies the artifacts of a directory the sweep is done with.
+     *
+     * @param location repository relative location of the directory, like {@code /g/a/1.0/}.
+     * @param artifacts the artifacts kept, marked as verified when they match.
+     * @param checksums names of the checksum files of the directory.
+     */
+    void verify(final Path dir, final String location, final List<RepositoryIndex.Entry> artifacts,
+                final Set<String> checksums) {
+        pool.execute(new Runnable() {
+            public void run() {
+                verifyDirectory(dir, location, artifacts, checksums);
+            }
+        });
+    }
+
+    /**
+     * Waits for all the directories handed over to be verified, and adds what was done to the metrics of the sweep.
+     */
+    void finish(CleanupMetrics sweep) throws InterruptedIOException {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.fine("Still verifying checksums");
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            throw new InterruptedIOException();
+        }
+        synchronized (this) {
+            sweep.merge(metrics);
+        }
+    }
+
+    /**
+     * Gives up on what was not verified yet, after the sweep failed.
+     */
+    void abort() {
+        pool.shutdownNow();
+    }
+
+    private void verifyDirectory(Path dir, String location, List<RepositoryIndex.Entry> artifacts,
+                                 Set<String> checksums) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        for (RepositoryIndex.Entry artifact : artifacts) {
+            String name = artifact.name;
+            String checksum = checksums.contains(name + ".sha1") ? name + ".sha1"
+                    : checksums.contains(name + ".md5") ? name + ".md5" : null;
+            if (checksum == null) {
+                continue;
+            }
+            Path file = dir.resolve(name);
+            try {
+                boolean sha1 = checksum.endsWith(".sha1");
+                String expected = expected(dir.resolve(checksum), sha1 ? 40 : 32);
+                if (expected == null) {
+                    continue;
+                }
+                long size = Files.size(file);
+                String actual = hash(file, sha1 ? "SHA-1" : "MD5");
+                synchronized (this) {
+                    metrics.verified();
+                }
+                if (actual.equals(expected)) {
+                    artifact.verified = true;
+                } else {
+                    evict(dir, location, name, size);
+                }
+            } catch (NoSuchFileException e) {
+                // removed by something else in between
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to verify " + file, e);
+            }
+        }
+        if (cleaner.getPlan() == null) {
+            for (String name : REMOTE_REPOSITORIES) {
+                forgetMissing(dir.resolve(name));
+            }
+        }
+    }
+
+    private void evict(Path dir, String location, String name, long size) {
+        CleanupPlan plan = cleaner.getPlan();
+        List<Path> files = new ArrayList<Path>(3);
+        files.add(dir.resolve(name));
+        files.add(dir.resolve(name + ".sha1"));
+        files.add(dir.resolve(name + ".md5"));
+        IoThrottle throttle = cleaner.getThrottle();
+        for (Path file : files) {
+            try {
+                if (plan != null) {
+                    if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+                        plan.file(cleaner.relative(file));
+                    }
+                } else {
+                    throttle.acquire();
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to delete " + file, e);
+                if (file == files.get(0)) {
+                    return;
+                }
+            }
+        }
+        synchronized (this) {
+            metrics.removed(size);
+            metrics.corrupt();
+        }
+        cleaner.pruned(size);
+        cleaner.removed(location + name, size);
+    }
+
+    /**
+     * The checksum a checksum file holds, lower case, null if it doesn't hold one of the given number of hexadecimal
+     * digits. Some tools append the file name.
+     */
+    private static String expected(Path checksum, int digits) throws IOException {
+        BufferedReader r = Files.newBufferedReader(checksum, UTF8);
+        try {
+            String line = r.readLine();
+            if (line == null) {
+                return null;
+            }
+            String[] tokens = line.trim().split("\\s+");
+            String hex = tokens[0].toLowerCase();
+            if (hex.length() != digits || !hex.matches("[0-9a-f]+")) {
+                return null;
+            }
+            return hex;
+        } finally {
+            r.close();
+        }
+    }
+
+    private String hash(Path file, String algorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        cleaner.getThrottle().acquire();
+        BasicFileAttributeView view = Files.getFileAttributeView(file, BasicFileAttributeView.class);
+        FileTime lastAccess = view.readAttributes().lastAccessTime();
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                channel.close();
+            }
+        } finally {
+            // reading for the cleanup is no use of the artifact
+            try {
+                view.setTimes(null, lastAccess, null);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to restore the access time of " + file, e);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Rewrites a {@code _remote.repositories} file without the entries of the files that are gone.
+     */
+    private void forgetMissing(Path remote) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(remote, UTF8);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + remote, e);
+            return;
+        }
+        List<String> kept = new ArrayList<String>(lines.size());
+        int orphaned = 0;
+        for (String line : lines) {
+            int end = line.indexOf('>');
+            if (!line.startsWith("#") && end > 0 && !Files.exists(remote.resolveSibling(line.substring(0, end)))) {
+                orphaned++;
+            } else {
+                kept.add(line);
+            }
+        }
+        if (orphaned == 0) {
+            return;
+        }
+        Path tmp = remote.resolveSibling(remote.getFileName() + ".tmp");
+        try {
+            Writer w = Files.newBufferedWriter(tmp, UTF8);
+            try {
+                for (String line : kept) {
+                    w.write(line);
+                    w.write('\n');
+                }
+            } finally {
+                w.close();
+            }
+            Files.move(tmp, remote, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to rewrite " + remote, e);
+            return;
+        }
+        synchronized (this) {
+            metrics.orphaned(orphaned);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ChecksumVerifier.class.getName());
+}
@@ -0,0 +1,197 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a {@link RepositoryCleaner} did to a repository, and how long it took.
+ * <p>
+ * Not thread safe: every thread of a sweep counts on its own instance, and they are merged once the threads are
+ * done.
+ */
+public final class CleanupMetrics implements Serializable {
+
+    /**
+     * Why a file found in a repository was kept.
+     */
+    public enum SkipReason {
+        /** Accessed since the build started, or fits in the size budget. */
+        RECENTLY_ACCESSED,
+        /** Not named like an artifact of its directory. */
+        NOT_AN_ARTIFACT,
+        /** Left alone by the cleanup policy of the job. */
+        POLICY,
+        UNREADABLE,
+        UNDELETABLE
+    }
+
+    private long filesScanned;
+    private long filesRemoved;
+    private long bytesReclaimed;
+    private long wallTime;
+    private long filesVerified;
+    private long corruptRemoved;
+    private long partialRemoved;
+    private long orphanedEntries;
+    private final long[] skipped = new long[SkipReason.values().length];
+    private final LatencyHistogram statLatency = new LatencyHistogram();
+    private final LatencyHistogram deleteLatency = new LatencyHistogram();
+    private List<String> sample;
+
+    void scanned(long statNanos) {
+        filesScanned++;
+        if (statNanos >= 0) {
+            statLatency.record(statNanos);
+        }
+    }
+
+    void removed(long size) {
+        filesRemoved++;
+        bytesReclaimed += size;
+    }
+
+    void deleted(long nanos) {
+        deleteLatency.record(nanos);
+    }
+
+    void verified() {
+        filesVerified++;
+    }
+
+    /**
+     * Counts an artifact removed for not matching its checksum, on top of {@link #removed(long)}.
+     */
+    void corrupt() {
+        corruptRemoved++;
+    }
+
+    void partial() {
+        partialRemoved++;
+    }
+
+    void orphaned(int entries) {
+        orphanedEntries += entries;
+    }
+
+    void skipped(SkipReason reason) {
+        skipped[reason.ordinal()]++;
+    }
+
+    void setWallTime(long millis) {
+        wallTime = millis;
+    }
+
+    void setSample(List<String> sample) {
+        this.sample = new ArrayList<String>(sample);
+    }
+
+    void merge(CleanupMetrics other) {
+        filesScanned += other.filesScanned;
+        filesRemoved += other.filesRemoved;
+        bytesReclaimed += other.bytesReclaimed;
+        wallTime += other.wallTime;
+        filesVerified += other.filesVerified;
+        corruptRemoved += other.corruptRemoved;
+        partialRemoved += other.partialRemoved;
+        orphanedEntries += other.orphanedEntries;
+        for (int i = 0; i < skipped.length; i++) {
+            skipped[i] += other.skipped[i];
+        }
+        statLatency.merge(other.statLatency);
+        deleteLatency.merge(other.deleteLatency);
+    }
+
+    /**
+     * Files of the repository looked at, stat'ed or known from the index.
+     */
+    public long getFilesScanned() {
+        return filesScanned;
+    }
+
+    /**
+     * Artifacts removed, not counting their checksums.
+     */
+    public long getFilesRemoved() {
+        return filesRemoved;
+    }
+
+    public long getBytesReclaimed() {
+        return bytesReclaimed;
+    }
+
+    /**
+     * Milliseconds the cleanup took, added up when merging the metrics of several cleanups.
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * Artifacts hashed against their checksum file.
+     */
+    public long getFilesVerified() {
+        return filesVerified;
+    }
+
+    /**
+     * Artifacts removed for not matching their checksum, also counted as removed.
+     */
+    public long getCorruptRemoved() {
+        return corruptRemoved;
+    }
+
+    /**
+     * Leftovers of failed or interrupted downloads removed, like {@code *.lastUpdated} files.
+     */
+    public long getPartialRemoved() {
+        return partialRemoved;
+    }
+
+    /**
+     * Entries of {@code _remote.repositories} files dropped because their file was gone.
+     */
+    public long getOrphanedEntries() {
+        return orphanedEntries;
+    }
+
+    public long getSkipped(SkipReason reason) {
+        return skipped[reason.ordinal()];
+    }
+
+    /**
+     * Number of files kept per reason, leaving out the reasons that didn't apply.
+     */
+    public Map<SkipReason, Long> getSkipped() {
+        Map<SkipReason, Long> result = new EnumMap<SkipReason, Long>(SkipReason.class);
+        for (SkipReason reason : SkipReason.values()) {
+            if (skipped[reason.ordinal()] > 0) {
+                result.put(reason, skipped[reason.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Time taken to get to each file, mostly spent reading its attributes.
+     */
+    public LatencyHistogram getStatLatency() {
+        return statLatency;
+    }
+
+    public LatencyHistogram getDeleteLatency() {
+        return deleteLatency;
+    }
+
+    /**
+     * The first few artifacts removed, not kept when merging.
+     */
+    public List<String> getSample() {
+        return sample != null ? sample : Collections.<String>emptyList();
+    }
+
+    private static final long serialVersionUID = 1L;
+}
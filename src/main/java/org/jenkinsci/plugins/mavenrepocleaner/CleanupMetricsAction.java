@@ -0,0 +1,31 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.model.Action;
+
+/**
+ * Shows on a build what {@link MavenRepoCleanerPostBuildTask} did to its private repository.
+ */
+public class CleanupMetricsAction implements Action {
+
+    private final CleanupMetrics metrics;
+
+    public CleanupMetricsAction(CleanupMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CleanupMetrics getMetrics() {
+        return metrics;
+    }
+
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    public String getDisplayName() {
+        return "Repository Cleanup";
+    }
+
+    public String getUrlName() {
+        return "repositoryCleanup";
+    }
+}
@@ -0,0 +1,279 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What a dry run of a {@link RepositoryCleaner} would have removed from a repository, to be applied later in a single
+ * batch.
+ * <p>
+ * Paths are relative to the repository and use '/' as separator. Filled by the sweeping threads, hence synchronized.
+ * <p>
+ * Saved as plain lines, a keyword and its value, so that reading a plan back can't do more than list paths; paths
+ * that would lead out of the repository, by name or through a symbolic link, are ignored when applying it.
+ */
+public final class CleanupPlan implements Serializable {
+
+    /** When the repository was scanned, artifacts accessed since are not removed when applying the plan. */
+    private long created = System.currentTimeMillis();
+    private final Set<String> artifacts = new HashSet<String>();
+    /** Artifacts, then the checksums and metadata that go with them, in the order they would have been removed. */
+    private final List<String> files = new ArrayList<String>();
+    /** Deepest first. */
+    private final List<String> directories = new ArrayList<String>();
+    /** Names of the builds removed per snapshot directory, that its metadata is to forget about. */
+    private final Map<String, List<String>> pruned = new LinkedHashMap<String, List<String>>();
+    private long bytes;
+
+    synchronized void artifact(String path, long size) {
+        artifacts.add(path);
+        bytes += size;
+    }
+
+    synchronized void file(String path) {
+        files.add(path);
+    }
+
+    synchronized void directory(String path) {
+        directories.add(path);
+    }
+
+    synchronized void pruned(String dir, List<String> names) {
+        pruned.put(dir, new ArrayList<String>(names));
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public synchronized int getArtifacts() {
+        return artifacts.size();
+    }
+
+    /**
+     * Bytes of artifacts removing them would reclaim, not counting their checksums and metadata.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized List<String> getDirectories() {
+        return new ArrayList<String>(directories);
+    }
+
+    /**
+     * Removes what the plan says from a repository, leaving out the artifacts accessed since the plan was made along
+     * with everything else in their directory.
+     *
+     * @return the artifacts removed.
+     */
+    public synchronized CleanupMetrics apply(File repository) {
+        CleanupMetrics metrics = new CleanupMetrics();
+        long started = System.currentTimeMillis();
+        Path root = repository.toPath().toAbsolutePath().normalize();
+        Path realRoot;
+        try {
+            realRoot = root.toRealPath();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Nothing to apply the plan to in " + root, e);
+            return metrics;
+        }
+        Set<String> used = new HashSet<String>();
+        for (String path : files) {
+            String dir = path.substring(0, path.lastIndexOf('/') + 1);
+            if (used.contains(dir)) {
+                continue;
+            }
+            Path file = resolve(root, path);
+            if (file == null || !isWithin(root, realRoot, file.getParent())) {
+                continue;
+            }
+            try {
+                if (artifacts.contains(path)) {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.lastAccessTime().toMillis() >= created) {
+                        used.add(dir);
+                        metrics.skipped(CleanupMetrics.SkipReason.RECENTLY_ACCESSED);
+                        continue;
+                    }
+                    Files.delete(file);
+                    metrics.removed(attrs.size());
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            } catch (NoSuchFileException e) {
+                // already gone
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to delete " + file, e);
+                used.add(dir);
+                metrics.skipped(CleanupMetrics.SkipReason.UNDELETABLE);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : pruned.entrySet()) {
+            Path dir = resolve(root, entry.getKey());
+            if (dir != null && !used.contains(entry.getKey() + '/') && isWithin(root, realRoot, dir)) {
+                new SnapshotPruning(dir, metadata(dir)).rewrite(entry.getValue());
+            }
+        }
+        for (String path : directories) {
+            Path dir = resolve(root, path);
+            if (dir == null || dir.equals(root) || !isWithin(root, realRoot, dir.getParent())) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(dir);
+            } catch (DirectoryNotEmptyException e) {
+                // something was kept, or added since
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to delete " + dir, e);
+            }
+        }
+        metrics.setWallTime(System.currentTimeMillis() - started);
+        return metrics;
+    }
+
+    /**
+     * A path of the plan within the repository, null if it leads out of it.
+     */
+    private static Path resolve(Path root, String path) {
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root)) {
+            LOGGER.warning("Ignoring " + path + ", which is not in " + root);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Whether a directory of the repository still is where the plan saw it: a job may have replaced it or one of its
+     * parents with a symbolic link since, which would have the plan delete files outside of the repository.
+     */
+    private static boolean isWithin(Path root, Path realRoot, Path dir) {
+        try {
+            if (dir.toRealPath().equals(realRoot.resolve(root.relativize(dir)))) {
+                return true;
+            }
+            LOGGER.warning("Ignoring " + dir + ", which leads through a symbolic link");
+        } catch (NoSuchFileException e) {
+            // already gone
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to resolve " + dir, e);
+        }
+        return false;
+    }
+
+    /**
+     * Saves the plan, to be applied by a later call.
+     */
+    synchronized void write(File file) throws IOException {
+        Writer out = Files.newBufferedWriter(file.toPath(), UTF8);
+        try {
+            out.write("created " + created + '\n');
+            out.write("bytes " + bytes + '\n');
+            for (String path : artifacts) {
+                out.write("artifact " + path + '\n');
+            }
+            for (String path : files) {
+                out.write("file " + path + '\n');
+            }
+            for (String path : directories) {
+                out.write("directory " + path + '\n');
+            }
+            for (Map.Entry<String, List<String>> entry : pruned.entrySet()) {
+                out.write("pruned " + entry.getKey() + '\n');
+                for (String name : entry.getValue()) {
+                    out.write("build " + name + '\n');
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a plan saved earlier.
+     */
+    static CleanupPlan read(File file) throws IOException {
+        CleanupPlan plan = new CleanupPlan();
+        List<String> builds = null;
+        BufferedReader in = Files.newBufferedReader(file.toPath(), UTF8);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("Not a cleanup plan: " + file);
+                }
+                String key = line.substring(0, space);
+                String value = line.substring(space + 1);
+                if (key.equals("created")) {
+                    plan.created = Long.parseLong(value);
+                } else if (key.equals("bytes")) {
+                    plan.bytes = Long.parseLong(value);
+                } else if (key.equals("artifact")) {
+                    plan.artifacts.add(value);
+                } else if (key.equals("file")) {
+                    plan.files.add(value);
+                } else if (key.equals("directory")) {
+                    plan.directories.add(value);
+                } else if (key.equals("pruned")) {
+                    builds = new ArrayList<String>();
+                    plan.pruned.put(value, builds);
+                } else if (key.equals("build") && builds != null) {
+                    builds.add(value);
+                } else {
+                    throw new IOException("Not a cleanup plan: " + file);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a cleanup plan: " + file, e);
+        } finally {
+            in.close();
+        }
+        return plan;
+    }
+
+    private static List<String> metadata(Path dir) {
+        List<String> names = new ArrayList<String>(2);
+        try {
+            DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "maven-metadata*.xml");
+            try {
+                for (Path entry : entries) {
+                    names.add(entry.getFileName().toString());
+                }
+            } finally {
+                entries.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to list " + dir, e);
+            return Collections.emptyList();
+        }
+        return names;
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(CleanupPlan.class.getName());
+}
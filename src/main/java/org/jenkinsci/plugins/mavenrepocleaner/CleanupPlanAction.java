@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.Item;
+import hudson.remoting.VirtualChannel;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Shows on a build what a dry run of {@link MavenRepoCleanerPostBuildTask} would have removed from its private
+ * repository, and applies the plan on request.
+ * <p>
+ * The plan itself is kept in the directory of the build, as {@value MavenRepoCleanerPostBuildTask#PLAN_FILE}, where
+ * the job can't change it. Artifacts accessed since the plan was made are left alone, so an older plan can still be
+ * applied safely.
+ */
+public class CleanupPlanAction implements Action {
+
+    /** What the dry run counted. */
+    private final CleanupMetrics planned;
+    private CleanupMetrics applied;
+
+    public CleanupPlanAction(CleanupMetrics planned) {
+        this.planned = planned;
+    }
+
+    public CleanupMetrics getPlanned() {
+        return planned;
+    }
+
+    public long getMegabytes() {
+        return planned.getBytesReclaimed() / MavenRepoCleanerPostBuildTask.MB;
+    }
+
+    /**
+     * What applying the plan did, null until it is applied.
+     */
+    public CleanupMetrics getApplied() {
+        return applied;
+    }
+
+    public void doApply(StaplerRequest req, StaplerResponse rsp) throws IOException, InterruptedException {
+        if (!"POST".equals(req.getMethod())) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        AbstractBuild<?, ?> build = req.findAncestorObject(AbstractBuild.class);
+        build.checkPermission(Item.BUILD);
+        FilePath workspace = build.getWorkspace();
+        if (workspace == null) {
+            throw new IOException("The workspace of " + build + " is not available");
+        }
+        synchronized (this) {
+            if (applied == null) {
+                File file = new File(build.getRootDir(), MavenRepoCleanerPostBuildTask.PLAN_FILE);
+                if (!file.exists()) {
+                    throw new IOException("No cleanup plan left in " + build.getRootDir());
+                }
+                applied = workspace.child(".repository").act(new Application(CleanupPlan.read(file)));
+                if (!file.delete()) {
+                    throw new IOException("Failed to delete " + file);
+                }
+                build.save();
+            }
+        }
+        rsp.sendRedirect(".");
+    }
+
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    public String getDisplayName() {
+        return "Repository Cleanup Plan";
+    }
+
+    public String getUrlName() {
+        return "repositoryCleanupPlan";
+    }
+
+    private static class Application implements FilePath.FileCallable<CleanupMetrics> {
+        private final CleanupPlan plan;
+
+        Application(CleanupPlan plan) {
+            this.plan = plan;
+        }
+
+        public CleanupMetrics invoke(File repository, VirtualChannel channel) {
+            return plan.apply(repository);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.Serializable;
+
+/**
+ * How the repository of a job is cleaned up, overriding the global settings of {@link MavenRepoCleanerProperty}.
+ * <p>
+ * A policy restricting the artifacts that may be removed has repositories trimmed of what it covers instead of
+ * deleted, so that heavily shared artifacts survive the cleanup.
+ */
+public class CleanupPolicy implements Serializable {
+
+    private final int maxAge;
+    private final int sizeBudget;
+    private final String includes;
+    private final String excludes;
+    private final boolean keepReleases;
+    private final int snapshotRetention;
+
+    /** Compiled on first use, on the node the policy is applied on. */
+    private transient volatile GroupIdTrie included;
+    private transient volatile GroupIdTrie excluded;
+
+    @DataBoundConstructor
+    public CleanupPolicy(int maxAge, int sizeBudget, String includes, String excludes, boolean keepReleases,
+                         int snapshotRetention) {
+        this.maxAge = maxAge;
+        this.sizeBudget = sizeBudget;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.keepReleases = keepReleases;
+        this.snapshotRetention = snapshotRetention;
+    }
+
+    /**
+     * Days after which the repository, or artifacts when trimming, expire, 0 to use the global expiration days.
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Megabytes of artifacts the repository may hold, 0 to use the global settings.
+     */
+    public int getSizeBudget() {
+        return sizeBudget;
+    }
+
+    /**
+     * groupIds the cleanup is restricted to, all of them when empty.
+     */
+    public String getIncludes() {
+        return includes;
+    }
+
+    /**
+     * groupIds never cleaned up, even when included.
+     */
+    public String getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Whether only snapshots are cleaned up.
+     */
+    public boolean isKeepReleases() {
+        return keepReleases;
+    }
+
+    /**
+     * Timestamped builds kept per snapshot, 0 to leave snapshots to the other rules.
+     */
+    public int getSnapshotRetention() {
+        return snapshotRetention;
+    }
+
+    /**
+     * Whether the policy spares some artifacts, so that the repository must be trimmed rather than deleted.
+     */
+    boolean isSelective() {
+        return !included().isEmpty() || !excluded().isEmpty() || keepReleases || snapshotRetention > 0;
+    }
+
+    /**
+     * Whether the artifacts of a version directory may be removed.
+     *
+     * @param location repository relative location of the directory, like {@code /org/apache/foo/1.0/}.
+     */
+    boolean covers(String location) {
+        if (keepReleases && !location.endsWith("-SNAPSHOT/")) {
+            return false;
+        }
+        GroupIdTrie included = included();
+        return (included.isEmpty() || included.matches(location)) && !excluded().matches(location);
+    }
+
+    private GroupIdTrie included() {
+        if (included == null) {
+            included = new GroupIdTrie(includes);
+        }
+        return included;
+    }
+
+    private GroupIdTrie excluded() {
+        if (excluded == null) {
+            excluded = new GroupIdTrie(excludes);
+        }
+        return excluded;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cleanups that happened on one node since Jenkins started: the post-build cleanups per job, and the last scheduled
+ * sweep with what it decided for every workspace.
+ * <p>
+ * Only kept in memory, the metrics of each build are saved with the build anyway.
+ */
+public final class CleanupStatistics {
+
+    private static final Map<String, CleanupStatistics> NODES = new HashMap<String, CleanupStatistics>();
+
+    /**
+     * @param node name of the node, empty for the master.
+     */
+    static synchronized CleanupStatistics of(String node) {
+        CleanupStatistics statistics = NODES.get(node);
+        if (statistics == null) {
+            statistics = new CleanupStatistics();
+            NODES.put(node, statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * What the last scheduled sweep did with the repository of a workspace.
+     */
+    public static final class Workspace {
+        private final String job;
+        private final String outcome;
+        private final String reason;
+
+        Workspace(SweepReport.Entry entry) {
+            this.job = entry.job;
+            this.outcome = entry.outcome.name();
+            this.reason = entry.reason;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    private final CleanupMetrics total = new CleanupMetrics();
+    private final Map<String, CleanupMetrics> jobs = new TreeMap<String, CleanupMetrics>();
+    private int builds;
+    private List<Workspace> lastSweep = Collections.emptyList();
+    private long lastSweepStarted;
+    private long lastSweepDuration;
+
+    synchronized void build(String job, CleanupMetrics metrics) {
+        builds++;
+        total.merge(metrics);
+        CleanupMetrics perJob = jobs.get(job);
+        if (perJob == null) {
+            perJob = new CleanupMetrics();
+            jobs.put(job, perJob);
+        }
+        perJob.merge(metrics);
+    }
+
+    synchronized void sweep(long started, List<SweepReport.Entry> entries) {
+        List<Workspace> workspaces = new ArrayList<Workspace>(entries.size());
+        for (SweepReport.Entry entry : entries) {
+            workspaces.add(new Workspace(entry));
+        }
+        lastSweep = workspaces;
+        lastSweepStarted = started;
+        lastSweepDuration = System.currentTimeMillis() - started;
+    }
+
+    /**
+     * Number of post-build cleanups.
+     */
+    public synchronized int getBuilds() {
+        return builds;
+    }
+
+    /**
+     * All post-build cleanups added up.
+     */
+    public synchronized CleanupMetrics getTotal() {
+        return copy(total);
+    }
+
+    /**
+     * Post-build cleanups added up per job, by job name.
+     */
+    public synchronized Map<String, CleanupMetrics> getJobs() {
+        Map<String, CleanupMetrics> result = new TreeMap<String, CleanupMetrics>();
+        for (Map.Entry<String, CleanupMetrics> job : jobs.entrySet()) {
+            result.put(job.getKey(), copy(job.getValue()));
+        }
+        return result;
+    }
+
+    public synchronized List<Workspace> getLastSweep() {
+        return lastSweep;
+    }
+
+    /**
+     * When the last scheduled sweep started, null if there was none.
+     */
+    public synchronized Date getLastSweepStarted() {
+        return lastSweepStarted == 0 ? null : new Date(lastSweepStarted);
+    }
+
+    /**
+     * Milliseconds the last scheduled sweep of the node took, deletions included.
+     */
+    public synchronized long getLastSweepDuration() {
+        return lastSweepDuration;
+    }
+
+    /**
+     * Metrics keep being added up while the page renders.
+     */
+    private static CleanupMetrics copy(CleanupMetrics metrics) {
+        CleanupMetrics copy = new CleanupMetrics();
+        copy.merge(metrics);
+        return copy;
+    }
+}
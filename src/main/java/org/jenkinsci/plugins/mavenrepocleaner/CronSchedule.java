@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import antlr.ANTLRException;
+
+import hudson.scheduler.CronTab;
+import hudson.scheduler.CronTabList;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * A cron spec parsed once, which tells when it next fires instead of being checked minute by minute.
+ */
+final class CronSchedule {
+
+    static final long MINUTE = 60 * 1000;
+
+    private final String spec;
+    private final CronTabList cronTab;
+    private final List<CronTab> tabs = new ArrayList<CronTab>();
+    private final List<String> neverFiring = new ArrayList<String>();
+
+    CronSchedule(String spec) throws ANTLRException {
+        this.spec = spec;
+        this.cronTab = CronTabList.create(spec);
+        // the same lines CronTabList is made of, it does not let us at them
+        for (String line : spec.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.length() > 0 && !line.startsWith("#")) {
+                CronTab tab = new CronTab(line);
+                if (fires(line)) {
+                    tabs.add(tab);
+                } else {
+                    // CronTab.ceil would look for it forever
+                    neverFiring.add(line);
+                }
+            }
+        }
+    }
+
+    String getSpec() {
+        return spec;
+    }
+
+    CronTabList getCronTab() {
+        return cronTab;
+    }
+
+    /**
+     * Lines of the spec left out because no date matches them, like {@code 0 0 31 2 *}.
+     */
+    List<String> getNeverFiring() {
+        return neverFiring;
+    }
+
+    /**
+     * The first firing at or after a time, -1 if the spec never fires.
+     */
+    long next(long time) {
+        long next = -1;
+        for (CronTab tab : tabs) {
+            long t = tab.ceil(time).getTimeInMillis();
+            if (next < 0 || t < next) {
+                next = t;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Whether any day matches the day of month, month and day of week of a line. Weekdays fall on the same dates again
+     * after 28 years, so checking the days of as many years tells; minute and hour always match some time of the day.
+     */
+    private static boolean fires(String line) throws ANTLRException {
+        String[] fields = line.split("\\s+");
+        if (fields.length != 5) {
+            // an alias like @daily
+            return true;
+        }
+        CronTab days = new CronTab("0 12 " + fields[2] + " " + fields[3] + " " + fields[4]);
+        Calendar cal = new GregorianCalendar(2000, Calendar.JANUARY, 1, 12, 0);
+        while (cal.get(Calendar.YEAR) < 2028) {
+            if (days.check(cal)) {
+                return true;
+            }
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return false;
+    }
+
+    /**
+     * Start of the minute a time falls in.
+     */
+    static long minute(long time) {
+        return time - time % MINUTE;
+    }
+}
@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The least recently accessed artifacts of a repository, up to a fixed number of them, along with the total size of
+ * all the artifacts offered.
+ * <p>
+ * Memory does not grow with the repository: once full, the most recently accessed candidate is dropped whenever an
+ * older one comes along. If that was not enough to get under budget, the repository is simply swept again.
+ */
+final class EvictionQueue {
+
+    static final class Candidate {
+        final Path file;
+        final long lastAccessed;
+        final long size;
+
+        Candidate(Path file, long lastAccessed, long size) {
+            this.file = file;
+            this.lastAccessed = lastAccessed;
+            this.size = size;
+        }
+    }
+
+    private static final Comparator<Candidate> NEWEST_FIRST = new Comparator<Candidate>() {
+        public int compare(Candidate a, Candidate b) {
+            return a.lastAccessed < b.lastAccessed ? 1 : a.lastAccessed > b.lastAccessed ? -1 : 0;
+        }
+    };
+
+    private final int capacity;
+    private final PriorityQueue<Candidate> heap;
+    private long total;
+    private boolean overflowed;
+
+    EvictionQueue(int capacity) {
+        this.capacity = capacity;
+        this.heap = new PriorityQueue<Candidate>(capacity, NEWEST_FIRST);
+    }
+
+    synchronized void offer(Path file, long size, long lastAccessed) {
+        total += size;
+        if (heap.size() < capacity) {
+            heap.add(new Candidate(file, lastAccessed, size));
+            return;
+        }
+        overflowed = true;
+        if (heap.peek().lastAccessed > lastAccessed) {
+            heap.poll();
+            heap.add(new Candidate(file, lastAccessed, size));
+        }
+    }
+
+    /**
+     * Adds the size of an artifact that may not be evicted to the total.
+     */
+    synchronized void spare(long size) {
+        total += size;
+    }
+
+    /**
+     * Takes the size of an artifact offered earlier, but removed since, out of the total. The artifact may stay a
+     * candidate, whose eviction then fails harmlessly.
+     */
+    synchronized void forget(long size) {
+        total -= size;
+    }
+
+    /**
+     * Total size of all the artifacts offered, not just of the candidates kept.
+     */
+    synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Whether some artifacts were left out, so that evicting all candidates may not be enough.
+     */
+    synchronized boolean isOverflowed() {
+        return overflowed;
+    }
+
+    synchronized List<Candidate> oldestFirst() {
+        List<Candidate> candidates = new ArrayList<Candidate>(heap);
+        Collections.sort(candidates, Collections.reverseOrder(NEWEST_FIRST));
+        return candidates;
+    }
+}
@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * groupId patterns compiled into a trie over the segments of the groupId, so that matching a directory of the
+ * repository takes one lookup per segment whatever the number of patterns.
+ * <p>
+ * A pattern matches the groupIds it is made of the first segments of: {@code org.apache} matches {@code org.apache}
+ * and {@code org.apache.maven}, but not {@code org.apachex}. A {@code *} segment matches any single segment.
+ */
+final class GroupIdTrie {
+
+    private static final String ANY = "*";
+
+    private final Node root = new Node();
+    private boolean empty = true;
+
+    /**
+     * @param patterns separated by white space or commas.
+     */
+    GroupIdTrie(String patterns) {
+        if (patterns == null) {
+            return;
+        }
+        for (String pattern : patterns.split("[\\s,]+")) {
+            if (pattern.length() == 0) {
+                continue;
+            }
+            Node node = root;
+            for (String segment : pattern.split("\\.")) {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+            empty = false;
+        }
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Whether the groupId of the artifacts of a version directory matches one of the patterns.
+     *
+     * @param location repository relative location of the directory, like {@code /org/apache/foo/1.0/}.
+     */
+    boolean matches(String location) {
+        String[] segments = location.substring(1).split("/");
+        // the last two are the artifactId and the version
+        return matches(root, segments, 0, segments.length - 2);
+    }
+
+    private static boolean matches(Node node, String[] segments, int i, int end) {
+        if (node.terminal) {
+            return true;
+        }
+        if (i >= end) {
+            return false;
+        }
+        Node child = node.children.get(segments[i]);
+        if (child != null && matches(child, segments, i + 1, end)) {
+            return true;
+        }
+        Node any = node.children.get(ANY);
+        return any != null && matches(any, segments, i + 1, end);
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<String, Node>(4);
+        boolean terminal;
+    }
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the file system calls of the cleanups of a node (stats and deletes) to a number per second, with a token bucket
+ * shared by all of them, so that builds running on the same disks keep most of it.
+ * <p>
+ * When adaptive, the rate is halved whenever a call takes longer than the latency target, a sign that the disk is
+ * busy with something else, and grows back by a tenth of the configured rate for every second calls stay fast.
+ * <p>
+ * Only the settings are sent to the node. There, every cleanup with the same settings resolves to the same bucket, so
+ * that concurrent post-build cleanups and sweeps of the node don't each get the full rate, and the adaptive rate
+ * carries over from one cleanup to the next.
+ */
+final class IoThrottle implements Serializable {
+
+    static final IoThrottle NONE = new IoThrottle(0, false, 0);
+
+    /** The buckets of this JVM, by settings. */
+    private static final ConcurrentMap<String, IoThrottle> BUCKETS = new ConcurrentHashMap<String, IoThrottle>();
+
+    /** The adaptive rate never drops below that many calls per second. */
+    private static final double MIN_RATE = 10;
+
+    private final int rate;
+    private final boolean adaptive;
+    private final long latencyTarget;
+
+    private transient double current;
+    private transient double tokens;
+    private transient long refilled;
+    private transient long adapted;
+
+    private IoThrottle(int rate, boolean adaptive, int latencyTarget) {
+        this(Math.max(rate, 0), adaptive && rate > 0, TimeUnit.MILLISECONDS.toNanos(latencyTarget));
+    }
+
+    private IoThrottle(int rate, boolean adaptive, long latencyTarget) {
+        this.rate = rate;
+        this.adaptive = adaptive;
+        this.latencyTarget = latencyTarget;
+    }
+
+    /**
+     * The bucket of this JVM for these settings.
+     *
+     * @param rate calls per second, 0 for no limit.
+     * @param adaptive whether to back off when calls get slow, only with a rate.
+     * @param latencyTarget milliseconds a call may take before backing off.
+     */
+    static IoThrottle of(int rate, boolean adaptive, int latencyTarget) {
+        return new IoThrottle(rate, adaptive, latencyTarget).shared();
+    }
+
+    private IoThrottle shared() {
+        if (rate == 0) {
+            return NONE;
+        }
+        String key = rate + "/" + adaptive + "/" + latencyTarget;
+        IoThrottle bucket = BUCKETS.get(key);
+        if (bucket == null) {
+            IoThrottle other = BUCKETS.putIfAbsent(key, this);
+            bucket = other != null ? other : this;
+        }
+        return bucket;
+    }
+
+    /**
+     * Sent to a node, stands for the bucket of the node.
+     */
+    private Object readResolve() {
+        return shared();
+    }
+
+    boolean isLimited() {
+        return rate > 0;
+    }
+
+    /**
+     * Waits for the next call to be allowed. Gives up waiting, keeping the interrupt status, if interrupted.
+     */
+    void acquire() {
+        if (rate == 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (current == 0) {
+                current = rate;
+                refilled = now;
+                adapted = now;
+            }
+            // a tenth of a second worth of calls may go in a burst
+            tokens = Math.min(tokens + (now - refilled) * current / 1e9, Math.max(1, current / 10));
+            refilled = now;
+            tokens--;
+            wait = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / current);
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adapts the rate to how long a call took.
+     */
+    void observe(long nanos) {
+        if (!adaptive) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (current == 0) {
+                return;
+            }
+            if (nanos > latencyTarget) {
+                // a single slow spell only halves the rate once
+                if (now - adapted > TimeUnit.MILLISECONDS.toNanos(100)) {
+                    current = Math.max(current / 2, Math.min(MIN_RATE, rate));
+                    adapted = now;
+                }
+            } else if (now - adapted >= TimeUnit.SECONDS.toNanos(1)) {
+                current = Math.min(current + rate / 10.0, rate);
+                adapted = now;
+            }
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+}
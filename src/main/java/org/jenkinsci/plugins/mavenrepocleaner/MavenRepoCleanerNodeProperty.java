@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Overrides on one node how fast the repository cleanups may go, for nodes whose disks are slower or busier than the
+ * others.
+ */
+public class MavenRepoCleanerNodeProperty extends NodeProperty<Node> {
+
+    private final int ioRate;
+    private final boolean adaptiveThrottling;
+    private final int latencyTarget;
+
+    @DataBoundConstructor
+    public MavenRepoCleanerNodeProperty(int ioRate, boolean adaptiveThrottling, int latencyTarget) {
+        this.ioRate = ioRate;
+        this.adaptiveThrottling = adaptiveThrottling;
+        this.latencyTarget = latencyTarget;
+    }
+
+    /**
+     * Stats and deletes per second, 0 for no limit.
+     */
+    public int getIoRate() {
+        return ioRate;
+    }
+
+    public boolean isAdaptiveThrottling() {
+        return adaptiveThrottling;
+    }
+
+    /**
+     * Milliseconds a stat or delete may take before the adaptive throttling backs off.
+     */
+    public int getLatencyTarget() {
+        return latencyTarget;
+    }
+
+    /**
+     * How fast cleanups may go on a node: as its property says, or else as configured globally. All the cleanups of a
+     * node share it.
+     */
+    static IoThrottle throttle(Node node) {
+        MavenRepoCleanerNodeProperty property =
+                node != null ? node.getNodeProperties().get(MavenRepoCleanerNodeProperty.class) : null;
+        if (property != null) {
+            return IoThrottle.of(property.ioRate, property.adaptiveThrottling, property.latencyTarget);
+        }
+        MavenRepoCleanerProperty.DescriptorImpl d = (MavenRepoCleanerProperty.DescriptorImpl)
+                Hudson.getInstance().getDescriptor(MavenRepoCleanerProperty.class);
+        return d != null ? IoThrottle.of(d.getIoRate(), d.isAdaptiveThrottling(), d.getLatencyTarget()) : IoThrottle.NONE;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends NodePropertyDescriptor {
+        @Override
+        public String getDisplayName() {
+            return "Maven repository cleanup throttling";
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.jenkinsci.plugins.mavenrepocleaner;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.maven.AbstractMavenProject;
 import hudson.maven.MavenModuleSet;
 import hudson.maven.MavenModuleSetBuild;
@@ -19,31 +20,139 @@ import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
 
 /**
  * @author: <a hef="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  */
 public class MavenRepoCleanerPostBuildTask extends Recorder {
 
+    private final int parallelism;
+    private final boolean incremental;
+    private final int sizeBudget;
+    private final int snapshotRetention;
+    private final boolean logRemoved;
+    private final RepositoryCleaner.AccessTracking accessTracking;
+    private final boolean dryRun;
+    private final boolean verifyChecksums;
+
     @DataBoundConstructor
-    public MavenRepoCleanerPostBuildTask() {
+    public MavenRepoCleanerPostBuildTask(int parallelism, boolean incremental, int sizeBudget, int snapshotRetention,
+                                         boolean logRemoved, RepositoryCleaner.AccessTracking accessTracking,
+                                         boolean dryRun, boolean verifyChecksums) {
+        this.parallelism = parallelism;
+        this.incremental = incremental;
+        this.sizeBudget = sizeBudget;
+        this.snapshotRetention = snapshotRetention;
+        this.logRemoved = logRemoved;
+        this.accessTracking = accessTracking;
+        this.dryRun = dryRun;
+        this.verifyChecksums = verifyChecksums;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Megabytes of artifacts the repository may hold, 0 to remove the artifacts unused during the build instead.
+     */
+    public int getSizeBudget() {
+        return sizeBudget;
+    }
+
+    /**
+     * Timestamped builds kept per snapshot, 0 to leave snapshots to the other rules.
+     */
+    public int getSnapshotRetention() {
+        return snapshotRetention;
+    }
+
+    /**
+     * Whether all the artifacts removed are listed in {@value #LOG_FILE}, next to the repository.
+     */
+    public boolean isLogRemoved() {
+        return logRemoved;
+    }
 
+    /**
+     * How artifacts used by the build are told apart, by their access time unless configured otherwise.
+     */
+    public RepositoryCleaner.AccessTracking getAccessTracking() {
+        return accessTracking != null ? accessTracking : RepositoryCleaner.AccessTracking.ATIME;
+    }
+
+    /**
+     * Whether the build only plans the cleanup, to be applied from the build page.
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    /**
+     * Whether the artifacts kept are checked against their checksums, removing the corrupt ones and the leftovers of
+     * failed downloads.
+     */
+    public boolean isVerifyChecksums() {
+        return verifyChecksums;
     }
 
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
 
         final long started = build.getTimeInMillis();
-        FilePath.FileCallable<Collection<String>> cleanup =
-            new FileCallableImpl(started);
-        Collection<String> removed = build.getWorkspace().child(".repository").act(cleanup);
-        if (removed.size() > 0) {
-            listener.getLogger().println( removed.size() + " unused artifacts removed from private maven repository" );
+        MavenRepoCleanerProperty property = build.getProject().getProperty(MavenRepoCleanerProperty.class);
+        CleanupPolicy policy = property != null ? property.getPolicy() : null;
+        FilePath.FileCallable<CleanupMetrics> cleanup =
+            new FileCallableImpl(started, parallelism, incremental, sizeBudget * MB, snapshotRetention, logRemoved,
+                    getAccessTracking(), policy, dryRun, MavenRepoCleanerNodeProperty.throttle(build.getBuiltOn()),
+                    verifyChecksums);
+        CleanupMetrics metrics = build.getWorkspace().child(".repository").act(cleanup);
+        if (dryRun) {
+            // kept with the build, out of reach of what the job runs
+            FilePath plan = build.getWorkspace().child(PLAN_FILE);
+            plan.copyTo(new FilePath(new File(build.getRootDir(), PLAN_FILE)));
+            plan.delete();
+            listener.getLogger().println( "Dry run: " + metrics.getFilesRemoved() + " unused artifacts would be removed from private maven repository, "
+                    + metrics.getBytesReclaimed() / MB + " MB reclaimable; the plan can be applied from the build page" );
+            build.addAction(new CleanupPlanAction(metrics));
+            return true;
+        }
+        if (metrics.getCorruptRemoved() > 0 || metrics.getPartialRemoved() > 0) {
+            listener.getLogger().println( metrics.getCorruptRemoved() + " corrupt artifacts and " + metrics.getPartialRemoved()
+                    + " leftovers of failed downloads removed from private maven repository" );
+        }
+        if (metrics.getFilesRemoved() > 0) {
+            listener.getLogger().println( metrics.getFilesRemoved() + " unused artifacts removed from private maven repository, "
+                    + metrics.getBytesReclaimed() / MB + " MB reclaimed in " + metrics.getWallTime() + " ms" );
+            for (String path : metrics.getSample()) {
+                listener.getLogger().println( "  " + path );
+            }
+            if (metrics.getFilesRemoved() > metrics.getSample().size()) {
+                listener.getLogger().println( logRemoved ? "  see " + LOG_FILE + " for the full list" : "  ..." );
+            }
         }
+        build.addAction(new CleanupMetricsAction(metrics));
+        CleanupStatistics.of(Util.fixNull(build.getBuiltOnStr())).build(build.getProject().getName(), metrics);
         return true;
     }
 
+    static final long MB = 1024 * 1024;
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    static final String LOG_FILE = ".repository-cleanup.log";
+
+    static final String PLAN_FILE = ".repository-cleanup.plan";
+
+    /**
+     * How many of the artifacts removed are sent back to show in the build, whatever the size of the repository.
+     */
+    private static final int SAMPLE_SIZE = 10;
+
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
     }
@@ -66,13 +175,59 @@ public class MavenRepoCleanerPostBuildTask extends Recorder {
                     || AbstractMavenProject.class.isAssignableFrom(jobType);
         }
     }
-    private static class FileCallableImpl implements FilePath.FileCallable<Collection<String>> {
+    private static class FileCallableImpl implements FilePath.FileCallable<CleanupMetrics> {
         private final long started;
-        public FileCallableImpl(long started) {
+        private final int parallelism;
+        private final boolean incremental;
+        private final long sizeBudget;
+        private final int snapshotRetention;
+        private final boolean logRemoved;
+        private final RepositoryCleaner.AccessTracking accessTracking;
+        private final CleanupPolicy policy;
+        /** Whether to save a plan next to the repository instead of cleaning up right away. */
+        private final boolean dryRun;
+        private final IoThrottle throttle;
+        private final boolean verifyChecksums;
+        public FileCallableImpl(long started, int parallelism, boolean incremental, long sizeBudget, int snapshotRetention,
+                                boolean logRemoved, RepositoryCleaner.AccessTracking accessTracking, CleanupPolicy policy,
+                                boolean dryRun, IoThrottle throttle, boolean verifyChecksums) {
             this.started = started;
+            this.parallelism = parallelism;
+            this.incremental = incremental;
+            this.sizeBudget = sizeBudget;
+            this.snapshotRetention = snapshotRetention;
+            this.logRemoved = logRemoved;
+            this.accessTracking = accessTracking;
+            this.policy = policy;
+            this.dryRun = dryRun;
+            this.throttle = throttle;
+            this.verifyChecksums = verifyChecksums;
         }
-        public Collection<String> invoke(File repository, VirtualChannel channel) throws IOException, InterruptedException {
-            return new RepositoryCleaner(started).clean(repository);
+        public CleanupMetrics invoke(File repository, VirtualChannel channel) throws IOException, InterruptedException {
+            // the settings of the task win over those of the policy of the job, which only fills in the blanks
+            RepositoryCleaner cleaner = new RepositoryCleaner(
+                    policy != null && policy.getMaxAge() > 0 ? started - policy.getMaxAge() * DAY : started);
+            cleaner.setParallelism(parallelism);
+            cleaner.setIncremental(incremental);
+            cleaner.setSizeBudget(sizeBudget == 0 && policy != null ? policy.getSizeBudget() * MB : sizeBudget);
+            cleaner.setSnapshotRetention(snapshotRetention == 0 && policy != null ? policy.getSnapshotRetention() : snapshotRetention);
+            cleaner.setAccessTracking(accessTracking);
+            cleaner.setPolicy(policy);
+            cleaner.setDryRun(dryRun);
+            cleaner.setThrottle(throttle);
+            cleaner.setVerifyChecksums(verifyChecksums);
+            RemovalLog log = new RemovalLog(SAMPLE_SIZE, logRemoved ? new File(repository.getParentFile(), LOG_FILE) : null);
+            try {
+                cleaner.clean(repository, log);
+            } finally {
+                log.close();
+            }
+            CleanupMetrics metrics = cleaner.getMetrics();
+            metrics.setSample(log.getSample());
+            if (dryRun) {
+                cleaner.getPlan().write(new File(repository.getParentFile(), PLAN_FILE));
+            }
+            return metrics;
         }
     }
 }
@@ -32,16 +32,19 @@ import hudson.model.AbstractProject;
 import hudson.model.Job;
 import hudson.scheduler.CronTab;
 import hudson.scheduler.CronTabList;
+import hudson.util.FormValidation;
 
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.util.Collections;
+import java.util.List;
 
 import hudson.triggers.TimerTrigger;
 import net.sf.json.JSONObject;
 
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import antlr.ANTLRException;
@@ -53,16 +56,29 @@ import antlr.ANTLRException;
  */
 public class MavenRepoCleanerProperty extends JobProperty<AbstractProject<?,?>> {
     private boolean notOnThisProject = false;
+    private CleanupPolicy policy;
     
     @DataBoundConstructor
-    public MavenRepoCleanerProperty(boolean notOnThisProject) {
+    public MavenRepoCleanerProperty(boolean notOnThisProject, CleanupPolicy policy) {
         this.notOnThisProject = notOnThisProject;
+        this.policy = policy;
+    }
+
+    public MavenRepoCleanerProperty(boolean notOnThisProject) {
+        this(notOnThisProject, null);
     }
 
     public boolean isNotOnThisProject() {
         return notOnThisProject;
     }
 
+    /**
+     * How the repository of this job is cleaned up, null to follow the global settings.
+     */
+    public CleanupPolicy getPolicy() {
+        return policy;
+    }
+
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
 
@@ -70,6 +86,23 @@ public class MavenRepoCleanerProperty extends JobProperty<AbstractProject<?,?>>
         private String cronSpec;
         private int expirationDays = 7;
         private int expirationStyle = 1;
+        private int sizeBudget = 1024;
+        private int nodeThreads = 4;
+        private int concurrentDeletions = 2;
+        private int nodeTimeout = 60;
+        private int purgeRate = 0;
+        private boolean deduplicate = false;
+        private boolean warmStart = false;
+        private boolean dryRun = false;
+        private int ioRate = 0;
+        private boolean adaptiveThrottling = false;
+        private int latencyTarget = 20;
+        private String sharedRepository;
+        private int sharedRetention = 30;
+        private int highWatermark = 0;
+        private int lowWatermark = 75;
+        /** Parsed from {@link #cronSpec} when first needed after it changed. */
+        private transient volatile CronSchedule schedule;
         
         public DescriptorImpl() {
             super( MavenRepoCleanerProperty.class );
@@ -124,10 +157,45 @@ public class MavenRepoCleanerProperty extends JobProperty<AbstractProject<?,?>>
                 else if (expStyle.equals("regardless")) {
                     expirationStyle = 2;
                 }
+                else if (expStyle.equals("budget")) {
+                    expirationStyle = 3;
+                }
                 else {
                     expirationStyle = 1;
                 }
             }
+
+            sizeBudget = parseInt(req.getParameter("mavenrepocleaner.sizeBudget"), 1024);
+            nodeThreads = parseInt(req.getParameter("mavenrepocleaner.nodeThreads"), 4);
+            concurrentDeletions = parseInt(req.getParameter("mavenrepocleaner.concurrentDeletions"), 2);
+            nodeTimeout = parseInt(req.getParameter("mavenrepocleaner.nodeTimeout"), 60);
+            if (req.getParameter("mavenrepocleaner.deferredDeletion") != null) {
+                purgeRate = parseInt(req.getParameter("mavenrepocleaner.purgeRate"), 1000);
+            } else {
+                purgeRate = 0;
+            }
+            deduplicate = req.getParameter("mavenrepocleaner.deduplicate") != null;
+            warmStart = req.getParameter("mavenrepocleaner.warmStart") != null;
+            dryRun = req.getParameter("mavenrepocleaner.dryRun") != null;
+            if (req.getParameter("mavenrepocleaner.throttling") != null) {
+                ioRate = parseInt(req.getParameter("mavenrepocleaner.ioRate"), 1000);
+                adaptiveThrottling = req.getParameter("mavenrepocleaner.adaptiveThrottling") != null;
+                latencyTarget = parseInt(req.getParameter("mavenrepocleaner.latencyTarget"), 20);
+            } else {
+                ioRate = 0;
+            }
+            if (req.getParameter("mavenrepocleaner.sharing") != null) {
+                sharedRepository = fixEmptyAndTrim(req.getParameter("mavenrepocleaner.sharedRepository"));
+                sharedRetention = parseInt(req.getParameter("mavenrepocleaner.sharedRetention"), 30);
+            } else {
+                sharedRepository = null;
+            }
+            if (req.getParameter("mavenrepocleaner.diskPressure") != null) {
+                highWatermark = Math.min(parseInt(req.getParameter("mavenrepocleaner.highWatermark"), 90), 100);
+                lowWatermark = Math.min(parseInt(req.getParameter("mavenrepocleaner.lowWatermark"), 75), highWatermark);
+            } else {
+                highWatermark = 0;
+            }
             
             save();
             return true;
@@ -149,6 +217,24 @@ public class MavenRepoCleanerProperty extends JobProperty<AbstractProject<?,?>>
             return cronSpec;
         }
 
+        /**
+         * Parses the spec like the timer trigger does, and rejects lines that never fire.
+         */
+        public FormValidation doCheckCronSpec(@QueryParameter String value) {
+            if (fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            try {
+                List<String> neverFiring = new CronSchedule(value).getNeverFiring();
+                if (!neverFiring.isEmpty()) {
+                    return FormValidation.error("Never fires: " + neverFiring.get(0));
+                }
+                return FormValidation.ok();
+            } catch (ANTLRException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
         public int getExpirationDays() {
             return expirationDays;
         }
@@ -156,16 +242,159 @@ public class MavenRepoCleanerProperty extends JobProperty<AbstractProject<?,?>>
         public int getExpirationStyle() {
             return expirationStyle;
         }
+
+        /**
+         * Megabytes of artifacts each repository may hold with expiration style 3.
+         */
+        public int getSizeBudget() {
+            return sizeBudget;
+        }
+
+        /**
+         * How many nodes are swept at the same time.
+         */
+        public int getNodeThreads() {
+            return nodeThreads;
+        }
+
+        /**
+         * How many nodes may be deleting repositories at the same time, to spare shared storage.
+         */
+        public int getConcurrentDeletions() {
+            return concurrentDeletions;
+        }
+
+        /**
+         * Minutes the calls of a sweep to a node may take altogether, after which the node is given up for this sweep.
+         */
+        public int getNodeTimeout() {
+            return nodeTimeout;
+        }
+
+        /**
+         * Files per second at which expired repositories moved to trash are purged in the background,
+         * 0 if they are deleted right away.
+         */
+        public int getPurgeRate() {
+            return purgeRate;
+        }
+
+        /**
+         * Whether identical release artifacts of the repositories of a node are replaced by hard links to a single
+         * copy after each sweep.
+         */
+        public boolean isDeduplicate() {
+            return deduplicate;
+        }
+
+        /**
+         * Whether the release artifacts used within the expiration days are kept in a pool of the node when deleting
+         * a repository, and linked into it again, so that the next build doesn't start from scratch.
+         */
+        public boolean isWarmStart() {
+            return warmStart;
+        }
+
+        /**
+         * Whether sweeps only log what they would delete or trim, and how much space that would reclaim.
+         */
+        public boolean isDryRun() {
+            return dryRun;
+        }
+
+        /**
+         * Stats and deletes per second the cleanups of a node may do, 0 for no limit. Nodes may override it with a
+         * {@link MavenRepoCleanerNodeProperty}.
+         */
+        public int getIoRate() {
+            return ioRate;
+        }
+
+        /**
+         * Whether the cleanups slow down further when stats and deletes take longer than the latency target.
+         */
+        public boolean isAdaptiveThrottling() {
+            return adaptiveThrottling;
+        }
+
+        /**
+         * Milliseconds a stat or delete may take before the adaptive throttling backs off.
+         */
+        public int getLatencyTarget() {
+            return latencyTarget;
+        }
+
+        /**
+         * Path of the local repository the jobs share on every node, {@code ~/} standing for the home directory of
+         * the user running the node, null if they don't.
+         */
+        public String getSharedRepository() {
+            return sharedRepository;
+        }
+
+        /**
+         * Days an artifact of the shared repository stays after the last build that used it.
+         */
+        public int getSharedRetention() {
+            return sharedRetention;
+        }
+
+        /**
+         * Percentage of the disk of a node used above which its oldest repositories are deleted, checked every
+         * hour whatever the schedule, 0 to only clean up on schedule.
+         */
+        public int getHighWatermark() {
+            return highWatermark;
+        }
+
+        /**
+         * Percentage of the disk of a node used at which deleting repositories for disk space stops.
+         */
+        public int getLowWatermark() {
+            return lowWatermark;
+        }
+
+        private static int parseInt(String value, int defaultValue) {
+            value = fixEmpty(value);
+            if (value != null) {
+                try {
+                    int i = DecimalFormat.getIntegerInstance().parse(value).intValue();
+                    if (i > 0) {
+                        return i;
+                    }
+                } catch (ParseException e) {
+                    // fall back to the default
+                }
+            }
+            return defaultValue;
+        }
         
         public CronTabList getCronTab() throws ANTLRException {
-            // If the cron spec isn't null or empty, create and return the CronTabList. Otherwise return an empty one.
-            if ((cronSpec!=null) && (!cronSpec.equals(""))) {
-                return CronTabList.create(cronSpec);
+            // If the cron spec isn't null or empty, return the CronTabList. Otherwise return an empty one.
+            CronSchedule schedule = getSchedule();
+            if (schedule != null) {
+                return schedule.getCronTab();
             }
             else {
                 return new CronTabList(Collections.<CronTab>emptyList());
             }
         }
+
+        /**
+         * The cron spec, parsed only once for all the checks until it is configured again. Null if there is none.
+         */
+        CronSchedule getSchedule() throws ANTLRException {
+            String spec = cronSpec;
+            if (spec == null || spec.equals("")) {
+                return null;
+            }
+            CronSchedule s = schedule;
+            if (s == null || !s.getSpec().equals(spec)) {
+                s = new CronSchedule(spec);
+                schedule = s;
+            }
+            return s;
+        }
             
         
     }
@@ -26,8 +26,8 @@ package org.jenkinsci.plugins.mavenrepocleaner;
 import antlr.ANTLRException;
 
 import hudson.FilePath;
-import hudson.Util;
 import hudson.Extension;
+import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.AsyncPeriodicWork;
 import hudson.model.Hudson;
@@ -36,14 +36,29 @@ import hudson.model.Slave;
 import hudson.model.TaskListener;
 import hudson.model.TopLevelItem;
 
+import hudson.util.DaemonThreadFactory;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
-import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 /**
@@ -54,7 +69,8 @@ import java.util.logging.Logger;
 @Extension
 public class MavenRepoCleanerThread extends AsyncPeriodicWork {
     private static MavenRepoCleanerThread theInstance;
-    private final Calendar cal = new GregorianCalendar();
+    /** Start of the first minute the cron spec was not checked for yet. */
+    private long checkedUntil = CronSchedule.minute(System.currentTimeMillis());
 
     // so that this can be easily accessed from sub-routine.
     private TaskListener listener;
@@ -78,164 +94,455 @@ public class MavenRepoCleanerThread extends AsyncPeriodicWork {
             
             this.listener = listener;
             
-            while (new Date().getTime() - cal.getTimeInMillis() > 1000) {
-                try {
-                    checkTriggers(cal);
-                } catch (Throwable e) {
-                    e.printStackTrace();
-                }
-                
-                cal.add(Calendar.MINUTE, 1);
+            try {
+                checkTriggers(System.currentTimeMillis());
+            } catch (Throwable e) {
+                e.printStackTrace();
             }
         } finally {
             this.listener = null;
         }
     }
     
-    public void checkTriggers(final Calendar cal) throws ANTLRException, IOException, InterruptedException  {
+    /**
+     * Sweeps the nodes once if the cron spec fired since the last check, however many times it did: after a restart
+     * or a long pause, missed firings are coalesced into a single sweep. Otherwise, with a high watermark, only frees
+     * disk space on the nodes that are above it.
+     */
+    public void checkTriggers(long now) throws ANTLRException, IOException, InterruptedException  {
         Hudson inst = Hudson.getInstance();
 
         MavenRepoCleanerProperty.DescriptorImpl d = (MavenRepoCleanerProperty.DescriptorImpl)inst.getDescriptor(MavenRepoCleanerProperty.class);
 
-        if (d!=null) {
-            if (d.getCronTab() != null) {
-                if (d.getCronTab().check(cal)) {
-                    for (Node n : inst.getNodes())
-                        if (n instanceof Slave) process((Slave)n, d.getExpirationDays());
-                    
-                    process(inst, d.getExpirationDays());
-                }
+        // minutes are only checked once they are over
+        long until = CronSchedule.minute(now - 1000) + CronSchedule.MINUTE;
+        long from = checkedUntil;
+        checkedUntil = Math.max(checkedUntil, until);
+
+        if (d == null) {
+            return;
+        }
+        CronSchedule schedule = d.getSchedule();
+        long fired = schedule != null ? schedule.next(from) : -1;
+        boolean scheduled = fired >= 0 && fired < until;
+        if (scheduled) {
+            long missed = schedule.next(fired + CronSchedule.MINUTE);
+            if (missed >= 0 && missed < until) {
+                LOGGER.info("Cron spec fired several times since " + new Date(from) + ", sweeping only once");
             }
+        } else if (d.getHighWatermark() == 0) {
+            return;
         }
+
+        List<Node> nodes = new ArrayList<Node>();
+        for (Node n : inst.getNodes())
+            if (n instanceof Slave) nodes.add(n);
+        nodes.add(inst);
+
+        process(nodes, d, !scheduled);
     }
-    
+
+    /**
+     * @deprecated since the cron spec is no longer checked minute by minute, use {@link #checkTriggers(long)}.
+     */
+    @Deprecated
+    public void checkTriggers(Calendar cal) throws ANTLRException, IOException, InterruptedException  {
+        checkTriggers(cal.getTimeInMillis());
+    }
+
     public static void invoke() {
         theInstance.run();
     }
 
-    private void process(Hudson h, int expirationDays) throws IOException, InterruptedException {
-        File jobs = new File(h.getRootDir(), "jobs");
-        File[] dirs = jobs.listFiles(DIR_FILTER);
-        if(dirs==null)      return;
-        for (File dir : dirs) {
-            FilePath repo = new FilePath(new File(new File(dir, "workspace"), ".repository"));
-            if(shouldBeDeleted(dir.getName(),repo,h,expirationDays)) {
-                delete(repo);
+    /**
+     * Sweeps nodes concurrently, and writes their logs one after the other once they are done.
+     *
+     * @param pressure whether to only free disk space on the nodes above the high watermark.
+     */
+    private void process(List<Node> nodes, MavenRepoCleanerProperty.DescriptorImpl d, boolean pressure) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(d.getNodeThreads(), nodes.size())), new DaemonThreadFactory());
+        Semaphore deletions = new Semaphore(Math.max(1, d.getConcurrentDeletions()));
+        try {
+            List<Future<ByteArrayOutputStream>> logs = new ArrayList<Future<ByteArrayOutputStream>>();
+            for (Node n : nodes) {
+                logs.add(executor.submit(new NodeCleanup(n, d, deletions, pressure)));
             }
+            for (int i = 0; i < nodes.size(); i++) {
+                try {
+                    logs.get(i).get().writeTo(listener.getLogger());
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace(listener.error("Failed on "+nodes.get(i).getNodeName()));
+                } catch (IOException e) {
+                    e.printStackTrace(listener.error("Failed to log the sweep of "+nodes.get(i).getNodeName()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private boolean shouldBeDeleted(String jobName, FilePath dir, Node n, int expirationDays) throws IOException, InterruptedException {
-        // TODO: the use of remoting is not optimal.
-        // One remoting can execute "exists", "lastModified", and "delete" all at once.
-        TopLevelItem item = Hudson.getInstance().getItem(jobName);
-        if(item==null) {
-            // no such project anymore
-            LOGGER.fine("Repository directory "+dir+" is not owned by any project");
-            return true;
-        }
+    /**
+     * Sweeps one node, logging to a buffer of its own.
+     */
+    private class NodeCleanup implements Callable<ByteArrayOutputStream> {
+        private final Node node;
+        private final MavenRepoCleanerProperty.DescriptorImpl d;
+        private final Semaphore deletions;
+        private final boolean pressure;
+        private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        private final TaskListener listener = new StreamTaskListener(log);
+        /** Nanoseconds the calls to the node may still take, waiting for the deletions of other nodes doesn't count. */
+        private long remaining;
 
-        if(!dir.exists())
-            return false;
-        
-        long now = new Date().getTime();
+        NodeCleanup(Node node, MavenRepoCleanerProperty.DescriptorImpl d, Semaphore deletions, boolean pressure) {
+            this.node = node;
+            this.d = d;
+            this.deletions = deletions;
+            this.pressure = pressure;
+            this.remaining = TimeUnit.MINUTES.toNanos(d.getNodeTimeout());
+        }
 
-        // If the marker file doesn't already exist, create it.
-        FilePath markerFile = new FilePath(dir, ".cleanupMarker");
-        if (!markerFile.exists()) {
-            // Giving marker file a modification time of now - 5 minutes, so that a check tomorrow
-            // will show it greater than 24 hours old.
-            markerFile.touch(now-(5*MIN));
+        public ByteArrayOutputStream call() throws InterruptedException {
+            if (node instanceof Hudson) {
+                process((Hudson) node);
+            } else {
+                process((Slave) node);
+            }
+            if (d.getSharedRepository() != null && !pressure && remaining > 0) {
+                sweepShared();
+            }
+            return log;
         }
 
-        
-        
-        if (item instanceof AbstractProject) {
-            AbstractProject p = (AbstractProject) item;
-            
-            MavenRepoCleanerProperty mrcp = (MavenRepoCleanerProperty)p.getProperty(MavenRepoCleanerProperty.class);
+        /**
+         * Removes what no build used lately from the repository the jobs of the node share.
+         */
+        private void sweepShared() throws InterruptedException {
+            FilePath root = node.getRootPath();
+            if (root == null) {
+                return;
+            }
+            deletions.acquire();
+            try {
+                SweepReport report = call(root, new SharedRepository.Sweep(d.getSharedRepository(),
+                        d.getSharedRetention(), runningLeases(), MavenRepoCleanerNodeProperty.throttle(node), d.isDryRun()));
+                for (SweepReport.Entry entry : report.getEntries()) {
+                    if (entry.outcome == SweepReport.Outcome.FAILED) {
+                        entry.failure.printStackTrace(listener.error("Failed to clean "+entry.repository));
+                    } else {
+                        // postponing is worth telling too, a busy node may never get its shared repository cleaned
+                        listener.getLogger().println(entry.reason);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Failed to clean the shared repository of "+node.getNodeName()));
+            } finally {
+                deletions.release();
+            }
+        }
 
-            if (mrcp!=null) {
-                if (mrcp.isNotOnThisProject()) {
-                    LOGGER.fine("Repository cleaning disabled for job " + jobName);
-                    return false;
+        /**
+         * Lease names of all the builds running, on whatever node: a build running for days still holds its lease.
+         */
+        private Set<String> runningLeases() {
+            Set<String> running = new HashSet<String>();
+            for (AbstractProject<?, ?> p : Hudson.getInstance().getAllItems(AbstractProject.class)) {
+                if (!p.isBuilding()) {
+                    continue;
+                }
+                for (AbstractBuild<?, ?> b = p.getLastBuild(); b != null; b = b.getPreviousBuildInProgress()) {
+                    if (b.isBuilding()) {
+                        running.add(SharedRepository.leaseName(p.getFullName(), b.getNumber()));
+                    }
                 }
-            } else {
-                LOGGER.fine("No MavenRepoCleanerProperty so Repository cleaning disabled for job " + jobName);
-                return false;
             }
-            
-            if (p.isBuilding()) {
-                LOGGER.fine("Repository directory " + dir + " belongs to a currently running build, so deletion is vetoed.");
-                return false;
+            return running;
+        }
+
+        private void process(Hudson h) throws InterruptedException {
+            File jobs = new File(h.getRootDir(), "jobs");
+            try {
+                sweep(new FilePath(jobs), "workspace/.repository", new File(h.getRootDir(), STORE).getPath(),
+                        new File(h.getRootDir(), POOL).getPath());
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Failed on master"));
+            }
+        }
+
+        private void process(Slave s) throws InterruptedException {
+            if (!pressure) {
+                listener.getLogger().println("Scanning "+s.getNodeName());
             }
 
-            MavenRepoCleanerProperty.DescriptorImpl d = (MavenRepoCleanerProperty.DescriptorImpl)mrcp.getDescriptor();
+            try {
+                FilePath path = s.getWorkspaceRoot();
+                if(path==null)  return;
+
+                sweep(path, ".repository", path.child(STORE).getRemote(), path.child(POOL).getRemote());
+            } catch (IOException e) {
+                e.printStackTrace(listener.error("Failed on "+s.getNodeName()));
+            }
+        }
 
-            // If expirationStyle is 1, compare against directory's last modified time.
-            if (d.getExpirationStyle()==1) {
-                // if younger than the given range, keep it
-                if(dir.lastModified() + expirationDays * DAY > now) {
-                    LOGGER.fine("Repository directory "+dir+" is only "+ Util.getTimeSpanString(now-dir.lastModified())+" old, so not deleting");
-                    return false;
+        /**
+         * Checks all the repositories below one directory with a single remote call, then deletes the expired ones
+         * with another as soon as the node is allowed to, and links identical artifacts of the remaining ones to
+         * {@code store}. With warm starts, the artifacts used lately are saved to {@code pool} before deleting.
+         */
+        private void sweep(FilePath root, String repository, String store, String pool) throws IOException, InterruptedException {
+            if (pressure) {
+                relieve(root, repository);
+                return;
+            }
+            long started = System.currentTimeMillis();
+            RepositoryDeleter deleter = new RepositoryDeleter(d.getPurgeRate(), MavenRepoCleanerNodeProperty.throttle(node));
+            Map<String, CleanupPolicy> policies = new HashMap<String, CleanupPolicy>();
+            Map<String, NodeSweep.Disposition> dispositions = dispositions(d, policies);
+            WarmPool warmPool = d.isWarmStart() && !d.isDryRun()
+                    ? new WarmPool(pool, d.getExpirationDays(), new HashSet<String>(dispositions.keySet())) : null;
+            deleter.setPool(warmPool);
+            SweepReport report = call(root, new NodeSweep(repository, dispositions, policies, d.getExpirationDays(), d.getExpirationStyle(), deleter, false));
+            log(report);
+
+            List<SweepReport.Entry> workspaces = report.getEntries(SweepReport.Outcome.DELETED, SweepReport.Outcome.KEPT, SweepReport.Outcome.FAILED);
+            List<SweepReport.Entry> expired = report.getEntries(SweepReport.Outcome.EXPIRED, SweepReport.Outcome.TRIM);
+            boolean deduplicate = d.isDeduplicate() && !d.isDryRun();
+            if (!expired.isEmpty() || deduplicate || warmPool != null) {
+                deletions.acquire();
+                try {
+                    // one at a time, each right after checking that its job is still as the sweep saw it
+                    for (SweepReport.Entry entry : expired) {
+                        if (!d.isDryRun()) {
+                            if (!unchanged(entry.job, dispositions.get(entry.job), started, d)) {
+                                workspaces.add(skipped(entry));
+                                continue;
+                            }
+                            listener.getLogger().println((entry.outcome == SweepReport.Outcome.TRIM ? "Trimming " : "Deleting ")+entry.repository);
+                        }
+                        SweepReport deleted = call(root, new RepositoryDeletion(Collections.singletonList(entry), deleter,
+                                d.getExpirationStyle() == 3 ? d.getSizeBudget() * MavenRepoCleanerPostBuildTask.MB : 0,
+                                d.getExpirationDays(), policies, d.isDryRun()));
+                        log(deleted);
+                        workspaces.addAll(deleted.getEntries());
+                    }
+                    if (deduplicate) {
+                        log(call(root, new ArtifactDeduplication(repository, store)));
+                    }
+                    if (warmPool != null) {
+                        int purged = call(root, new WarmPool.Purge(warmPool));
+                        if (purged > 0) {
+                            listener.getLogger().println(purged+" artifacts no job used lately dropped from the warm pool");
+                        }
+                    }
+                } finally {
+                    deletions.release();
                 }
             }
-            // If expirationStyle is 0, compare against marker file's last modified time.
-            else if (d.getExpirationStyle()==0) {
-                // if younger than the given range, keep it
-                if(markerFile.lastModified() + expirationDays * DAY > now) {
-                    LOGGER.fine("Repository directory marker file "+markerFile+" is only "+ Util.getTimeSpanString(now-markerFile.lastModified())+" old, so not deleting");
-                    return false;
+            CleanupStatistics.of(node.getNodeName()).sweep(started, workspaces);
+        }
+
+        /**
+         * Deletes the oldest repositories below one directory if the disk holding it is above the high watermark,
+         * until it is down to the low watermark. The repositories of jobs that are building, opted out or whose
+         * policy spares some artifacts are left alone.
+         */
+        private void relieve(FilePath root, String repository) throws IOException, InterruptedException {
+            int used = call(root, new PressureRelief.Usage());
+            if (used < d.getHighWatermark()) {
+                return;
+            }
+            listener.getLogger().println(node.getNodeName()+" is "+used+"% full, deleting the oldest repositories down to "
+                    +d.getLowWatermark()+"%");
+            // trash would only be purged after the disk was found to be still full
+            RepositoryDeleter deleter = new RepositoryDeleter(0, MavenRepoCleanerNodeProperty.throttle(node));
+            deletions.acquire();
+            try {
+                long started = System.currentTimeMillis();
+                Map<String, CleanupPolicy> policies = new HashMap<String, CleanupPolicy>();
+                Map<String, NodeSweep.Disposition> dispositions = dispositions(d, policies);
+                Map<String, NodeSweep.Disposition> spared = new HashMap<String, NodeSweep.Disposition>(dispositions);
+                for (Map.Entry<String, CleanupPolicy> policy : policies.entrySet()) {
+                    if (policy.getValue().isSelective()) {
+                        spared.put(policy.getKey(), NodeSweep.Disposition.KEEP);
+                    }
+                }
+                SweepReport candidates = call(root, new PressureRelief(repository, spared, d.getLowWatermark(), d.isDryRun()));
+                if (d.isDryRun()) {
+                    log(candidates);
+                    return;
+                }
+                // not a sweep of all the workspaces, so the statistics keep the last one
+                for (SweepReport.Entry entry : candidates.getEntries()) {
+                    if (call(root, new PressureRelief.Usage()) <= d.getLowWatermark()) {
+                        break;
+                    }
+                    if (!unchanged(entry.job, dispositions.get(entry.job), started, d)) {
+                        log(skipped(entry));
+                        continue;
+                    }
+                    log(call(root, new RepositoryDeletion(Collections.singletonList(entry), deleter, 0, 0,
+                            policies, false)));
+                }
+            } finally {
+                deletions.release();
+            }
+        }
+
+        /**
+         * Runs a callable on a node, giving up on nodes that don't answer in time: all the calls to a node share the
+         * node timeout, and once it is spent the remaining ones are not even made.
+         */
+        private <T> T call(FilePath root, FilePath.FileCallable<T> callable) throws IOException, InterruptedException {
+            if (remaining <= 0) {
+                throw new IOException("Gave up on " + node.getNodeName() + " after " + d.getNodeTimeout() + " minutes");
+            }
+            long start = System.nanoTime();
+            Future<T> future = root.actAsync(callable);
+            try {
+                return future.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new IOException("No answer after " + d.getNodeTimeout() + " minutes", e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                remaining -= System.nanoTime() - start;
+                // timed out or interrupted while waiting: don't leave the node working for nothing
+                if (!future.isDone()) {
+                    future.cancel(true);
                 }
             }
-            // If expirationStyle is 2, just return true - we're deleting regardless.
-            else if (d.getExpirationStyle()==2) {
-                LOGGER.fine("Repository directory "+dir+" should be deleted regardless of age");
-                return true;
+        }
+
+        private void log(ArtifactDeduplication.Report report) {
+            if (report.unsupported) {
+                listener.getLogger().println("Hard links are not supported, artifacts were not deduplicated");
+                return;
             }
+            listener.getLogger().println("Linked "+report.linked+" duplicate artifacts, saving "
+                    +report.saved / MavenRepoCleanerPostBuildTask.MB+" MB; "+report.purged+" unused artifacts removed from the store");
         }
 
-        LOGGER.fine("Going to delete repository directory "+dir);
-        return true;
-    }
+        /**
+         * What is left of an entry the sweep found expired, but whose job changed since.
+         */
+        private SweepReport.Entry skipped(SweepReport.Entry entry) {
+            SweepReport report = new SweepReport();
+            report.kept(entry.job, new File(entry.repository), "Repository directory " + entry.repository
+                    + " is not deleted, its job was built or reconfigured since the sweep");
+            return report.getEntries().get(0);
+        }
 
-    private void process(Slave s, int expirationDays) throws InterruptedException {
-        listener.getLogger().println("Scanning "+s.getNodeName());
+        private void log(SweepReport.Entry entry) {
+            LOGGER.fine(entry.reason);
+        }
 
-        try {
-            FilePath path = s.getWorkspaceRoot();
-            if(path==null)  return;
+        private void log(SweepReport report) {
+            for (SweepReport.Entry entry : report.getEntries()) {
+                switch (entry.outcome) {
+                case DELETED:
+                    LOGGER.fine(entry.reason);
+                    listener.getLogger().println("Deleted "+entry.repository);
+                    break;
+                case TRIMMED:
+                case PLANNED:
 
-            List<FilePath> dirs = path.list(DIR_FILTER);
-            if(dirs ==null) return;
-            for (FilePath dir : dirs) {
-                FilePath repo = new FilePath(dir, ".repository");
-                if(shouldBeDeleted(dir.getName(),repo,s,expirationDays))
-                    delete(repo);
+                    listener.getLogger().println(entry.reason);
+                    break;
+                case FAILED:
+                    entry.failure.printStackTrace(listener.error("Failed to clean "+entry.repository));
+                    break;
+                default:
+                    LOGGER.fine(entry.reason);
+                }
             }
-        } catch (IOException e) {
-            e.printStackTrace(listener.error("Failed on "+s.getNodeName()));
         }
     }
 
-    private void delete(FilePath dir) throws InterruptedException {
-        try {
-            listener.getLogger().println("Deleting "+dir);
-            dir.deleteRecursive();
-        } catch (IOException e) {
-            e.printStackTrace(listener.error("Failed to delete "+dir));
+    /**
+     * Decides what may happen to the repository of each job, from what only the master knows.
+     *
+     * @param policies filled with the cleanup policies of the jobs that have one.
+     */
+    private Map<String, NodeSweep.Disposition> dispositions(MavenRepoCleanerProperty.DescriptorImpl d,
+                                                            Map<String, CleanupPolicy> policies) {
+        Map<String, NodeSweep.Disposition> dispositions = new HashMap<String, NodeSweep.Disposition>();
+        for (TopLevelItem item : Hudson.getInstance().getItems()) {
+            dispositions.put(item.getName(), disposition(item, d, policies));
         }
+        return dispositions;
     }
 
+    private static NodeSweep.Disposition disposition(TopLevelItem item, MavenRepoCleanerProperty.DescriptorImpl d,
+                                                     Map<String, CleanupPolicy> policies) {
+        String jobName = item.getName();
+        NodeSweep.Disposition disposition = NodeSweep.Disposition.DELETE;
+
+        if (item instanceof AbstractProject) {
+            AbstractProject p = (AbstractProject) item;
 
-    private static class DirectoryFilter implements FileFilter, Serializable {
-        public boolean accept(File f) {
-            return f.isDirectory();
+            MavenRepoCleanerProperty mrcp = (MavenRepoCleanerProperty)p.getProperty(MavenRepoCleanerProperty.class);
+
+            if (mrcp == null) {
+                LOGGER.fine("No MavenRepoCleanerProperty so Repository cleaning disabled for job " + jobName);
+                disposition = NodeSweep.Disposition.KEEP;
+            } else if (mrcp.isNotOnThisProject()) {
+                LOGGER.fine("Repository cleaning disabled for job " + jobName);
+                disposition = NodeSweep.Disposition.KEEP;
+            } else if (p.isBuilding()) {
+                LOGGER.fine("Repository directory of " + jobName + " belongs to a currently running build, so deletion is vetoed.");
+                disposition = NodeSweep.Disposition.KEEP;
+            } else if (mrcp.getPolicy() != null) {
+                // the policy decides between deleting and trimming
+                policies.put(jobName, mrcp.getPolicy());
+                disposition = NodeSweep.Disposition.EXPIRE;
+            } else if (d.getExpirationStyle() != 2) {
+                disposition = NodeSweep.Disposition.EXPIRE;
+            }
+        }
+        return disposition;
+    }
+
+    /**
+     * Whether what was decided for the repository of a job still holds right before deleting or trimming it: the job
+     * is not building and didn't build since, and its settings still lead to the same disposition. Deleting or trimming
+     * may come long after the sweep, once the node is allowed to.
+     *
+     * @param before what the sweep decided, null if the directory belonged to no job.
+     * @param since when the sweep decided.
+     */
+    private static boolean unchanged(String job, NodeSweep.Disposition before, long since,
+                                     MavenRepoCleanerProperty.DescriptorImpl d) {
+        TopLevelItem item = Hudson.getInstance().getItem(job);
+        if (item == null) {
+            // the job is gone, or still is
+            return true;
+        }
+        if (before == null) {
+            // a new job took the directory over
+            return false;
+        }
+        if (disposition(item, d, new HashMap<String, CleanupPolicy>()) != before) {
+            return false;
+        }
+        if (item instanceof AbstractProject) {
+            AbstractBuild<?, ?> last = ((AbstractProject<?, ?>) item).getLastBuild();
+            return last == null || last.getTimeInMillis() < since;
         }
-        private static final long serialVersionUID = 1L;
+        return true;
     }
 
-    private static final FileFilter DIR_FILTER = new DirectoryFilter();
+    /**
+     * Where a node keeps the artifacts shared by its repositories, relative to the workspace root of slaves and to
+     * the root of the master.
+     */
+    private static final String STORE = ".maven-repo-cleaner/store";
+
+    /**
+     * Where a node keeps the artifacts its jobs used lately across deletions of their repositories, relative like
+     * {@link #STORE}.
+     */
+    private static final String POOL = ".maven-repo-cleaner/pool";
 
     private static final Logger LOGGER = Logger.getLogger(MavenRepoCleanerThread.class.getName());
 
@@ -0,0 +1,45 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.TransientComputerActionFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Shows on a node the {@link CleanupStatistics} of its repositories.
+ */
+public class NodeCleanupAction implements Action {
+
+    private final String node;
+
+    NodeCleanupAction(String node) {
+        this.node = node;
+    }
+
+    public CleanupStatistics getStatistics() {
+        return CleanupStatistics.of(node);
+    }
+
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    public String getDisplayName() {
+        return "Repository Cleanup";
+    }
+
+    public String getUrlName() {
+        return "repositoryCleanup";
+    }
+
+    @Extension
+    public static class Factory extends TransientComputerActionFactory {
+        @Override
+        public Collection<? extends Action> createFor(Computer target) {
+            return Collections.singleton(new NodeCleanupAction(target.getName()));
+        }
+    }
+}
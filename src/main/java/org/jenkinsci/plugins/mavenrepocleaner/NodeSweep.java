@@ -0,0 +1,176 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Checks and deletes the private repositories of all the jobs of a node in a single remote call.
+ * <p>
+ * Invoked on the directory holding one directory per job: the workspace root of a slave, or the jobs directory of the
+ * master. What can only be known on the master (whether the project still exists, whether it opted out or is building)
+ * is decided beforehand and handed over as a {@link Disposition} per job; everything that needs the file system is
+ * evaluated on the node.
+ * <p>
+ * When not deleting, the repositories that should go are only reported as {@link SweepReport.Outcome#EXPIRED}, to be
+ * deleted later by a {@link RepositoryDeletion}.
+ */
+class NodeSweep implements FilePath.FileCallable<SweepReport> {
+
+    enum Disposition {
+        /** Never delete the repository of this job. */
+        KEEP,
+        /** Delete the repository once it is older than the expiration days. */
+        EXPIRE,
+        /** Delete the repository regardless of its age. */
+        DELETE
+    }
+
+    private final String repository;
+    private final Map<String, Disposition> jobs;
+    private final Map<String, CleanupPolicy> policies;
+    private final int expirationDays;
+    private final int expirationStyle;
+    private final RepositoryDeleter deleter;
+    private final boolean deleting;
+
+    /**
+     * @param repository path of the repository, relative to the directory of a job.
+     * @param jobs what to do per job directory name, directories of unknown jobs are deleted.
+     * @param policies cleanup policies of the jobs that have one, by job directory name.
+     * @param deleting whether to delete expired repositories right away.
+     */
+    NodeSweep(String repository, Map<String, Disposition> jobs, Map<String, CleanupPolicy> policies,
+              int expirationDays, int expirationStyle, RepositoryDeleter deleter, boolean deleting) {
+        this.repository = repository;
+        this.jobs = jobs;
+        this.policies = policies;
+        this.expirationDays = expirationDays;
+        this.expirationStyle = expirationStyle;
+        this.deleter = deleter;
+        this.deleting = deleting;
+    }
+
+    public SweepReport invoke(File root, VirtualChannel channel) throws IOException, InterruptedException {
+        SweepReport report = new SweepReport();
+        File[] dirs = root.listFiles(DIR_FILTER);
+        if (dirs == null) {
+            return report;
+        }
+        for (File dir : dirs) {
+            File repo = new File(dir, repository);
+            deleter.purgeLeftovers(repo);
+            if (!repo.isDirectory()) {
+                continue;
+            }
+            String job = dir.getName();
+            Disposition disposition = jobs.get(job);
+            if (disposition == null) {
+                delete(job, repo, "Repository directory " + repo + " is not owned by any project", report);
+                continue;
+            }
+
+            long now = System.currentTimeMillis();
+            // If the marker file doesn't already exist, create it.
+            File markerFile = new File(repo, ".cleanupMarker");
+            if (!markerFile.exists()) {
+                // Giving marker file a modification time of now - 5 minutes, so that a check tomorrow
+                // will show it greater than 24 hours old.
+                try {
+                    touch(markerFile, now - 5 * MIN);
+                } catch (IOException e) {
+                    report.failed(job, repo, e);
+                    continue;
+                }
+            }
+
+            switch (disposition) {
+            case KEEP:
+                report.kept(job, repo, "Repository directory " + repo + " is not to be cleaned");
+                break;
+            case DELETE:
+                delete(job, repo, "Repository directory " + repo + " should be deleted regardless of age", report);
+                break;
+            case EXPIRE:
+                expire(job, repo, markerFile, now, policies.get(job), report);
+                break;
+            }
+        }
+        return report;
+    }
+
+    private void expire(String job, File repo, File markerFile, long now, CleanupPolicy policy, SweepReport report) {
+        int expirationDays = policy != null && policy.getMaxAge() > 0 ? policy.getMaxAge() : this.expirationDays;
+        // A job with a size budget of its own is trimmed to it, whatever the expiration style.
+        if (policy != null && policy.getSizeBudget() > 0) {
+            report.trim(job, repo, "Repository directory " + repo + " is trimmed to the size budget of its job");
+            return;
+        }
+        // If expirationStyle is 1, compare against directory's last modified time.
+        if (expirationStyle == 1) {
+            // if younger than the given range, keep it
+            if (repo.lastModified() + expirationDays * DAY > now) {
+                report.kept(job, repo, "Repository directory " + repo + " is only "
+                        + Util.getTimeSpanString(now - repo.lastModified()) + " old, so not deleting");
+                return;
+            }
+        }
+        // If expirationStyle is 0, compare against marker file's last modified time.
+        else if (expirationStyle == 0) {
+            // if younger than the given range, keep it
+            if (markerFile.lastModified() + expirationDays * DAY > now) {
+                report.kept(job, repo, "Repository directory marker file " + markerFile + " is only "
+                        + Util.getTimeSpanString(now - markerFile.lastModified()) + " old, so not deleting");
+                return;
+            }
+        }
+        // If expirationStyle is 3, trim the repository to the size budget instead of deleting it.
+        else if (expirationStyle == 3) {
+            report.trim(job, repo, "Repository directory " + repo + " is trimmed to its size budget");
+            return;
+        }
+        // A policy sparing some artifacts has the others removed instead of the whole repository.
+        if (policy != null && policy.isSelective()) {
+            report.trim(job, repo, "Repository directory " + repo + " is trimmed to the cleanup policy of its job");
+            return;
+        }
+        delete(job, repo, "Going to delete repository directory " + repo, report);
+    }
+
+    private void delete(String job, File repo, String reason, SweepReport report) {
+        if (!deleting) {
+            report.expired(job, repo, reason);
+            return;
+        }
+        try {
+            deleter.delete(repo, job);
+            report.deleted(job, repo, reason);
+        } catch (IOException e) {
+            report.failed(job, repo, e);
+        }
+    }
+
+    private static void touch(File file, long timestamp) throws IOException {
+        if (!file.exists()) {
+            new FileOutputStream(file).close();
+        }
+        file.setLastModified(timestamp);
+    }
+
+    private static final FileFilter DIR_FILTER = new FileFilter() {
+        public boolean accept(File f) {
+            return f.isDirectory();
+        }
+    };
+
+    private static final long MIN = 60 * 1000;
+    private static final long DAY = 24 * 60 * MIN;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the repositories of a node whose disk is too full in the order they are to be deleted, oldest first, each as
+ * an {@link SweepReport.Outcome#EXPIRED} entry.
+ * <p>
+ * Invoked on the same directory as a {@link NodeSweep}. Repositories of unknown jobs go first, then those of the
+ * other jobs by last modification; the expiration days don't matter here, only the repositories of jobs to be kept
+ * are spared. The master then deletes them one at a time with a {@link RepositoryDeletion}, checking the job of each
+ * right before, until the disk is down to the low watermark according to {@link Usage}.
+ * <p>
+ * A dry run deletes nothing, so it doesn't need the master in between: it adds up the size of the repositories
+ * instead, since the disk doesn't tell, and reports those that would go as planned.
+ */
+class PressureRelief implements FilePath.FileCallable<SweepReport> {
+
+    /**
+     * Percentage of the disk holding a directory that is used.
+     */
+    static final class Usage implements FilePath.FileCallable<Integer> {
+        public Integer invoke(File root, VirtualChannel channel) {
+            return used(root);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final String repository;
+    private final Map<String, NodeSweep.Disposition> jobs;
+    private final int lowWatermark;
+    private final boolean dryRun;
+
+    /**
+     * @param repository path of the repository, relative to the directory of a job.
+     * @param jobs what may happen per job directory name, only those to keep are spared.
+     * @param lowWatermark percentage of the disk used at which a dry run stops planning.
+     */
+    PressureRelief(String repository, Map<String, NodeSweep.Disposition> jobs, int lowWatermark, boolean dryRun) {
+        this.repository = repository;
+        this.jobs = jobs;
+        this.lowWatermark = lowWatermark;
+        this.dryRun = dryRun;
+    }
+
+    public SweepReport invoke(File root, VirtualChannel channel) throws IOException, InterruptedException {
+        SweepReport report = new SweepReport();
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return report;
+        }
+        List<File> repos = new ArrayList<File>();
+        for (File dir : dirs) {
+            File repo = new File(dir, repository);
+            if (jobs.get(dir.getName()) != NodeSweep.Disposition.KEEP && repo.isDirectory()) {
+                repos.add(repo);
+            }
+        }
+        Collections.sort(repos, new Comparator<File>() {
+            public int compare(File a, File b) {
+                boolean ownedA = jobs.containsKey(a.getParentFile().getName());
+                boolean ownedB = jobs.containsKey(b.getParentFile().getName());
+                if (ownedA != ownedB) {
+                    return ownedA ? 1 : -1;
+                }
+                long ma = a.lastModified();
+                long mb = b.lastModified();
+                return ma < mb ? -1 : ma > mb ? 1 : 0;
+            }
+        });
+
+        long total = root.getTotalSpace();
+        // what a dry run still has to find
+        long excess = total - root.getUsableSpace() - total / 100 * lowWatermark;
+        for (File repo : repos) {
+            String job = repo.getParentFile().getName();
+            if (!dryRun) {
+                report.expired(job, repo, "Deleted repository directory " + repo + " to free disk space");
+                continue;
+            }
+            if (excess <= 0) {
+                break;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            try {
+                long size = RepositoryDeletion.size(repo);
+                excess -= size;
+                report.planned(job, repo, "Would delete " + repo + " to free disk space, "
+                        + size / MavenRepoCleanerPostBuildTask.MB + " MB");
+            } catch (IOException e) {
+                report.failed(job, repo, e);
+            }
+        }
+        return report;
+    }
+
+    private static int used(File root) {
+        long total = root.getTotalSpace();
+        if (total == 0) {
+            // not a file system that tells
+            return 0;
+        }
+        return (int) ((total - root.getUsableSpace()) * 100 / total);
+    }
+
+    private static final long serialVersionUID = 1L;
+}
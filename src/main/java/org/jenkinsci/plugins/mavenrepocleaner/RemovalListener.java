@@ -0,0 +1,15 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+/**
+ * Told about every artifact a {@link RepositoryCleaner} removes, as soon as it is removed, so that nothing needs to
+ * hold the whole list.
+ * <p>
+ * Called by the threads sweeping the repository, but never by two of them at the same time.
+ */
+public interface RemovalListener {
+
+    /**
+     * @param path repository relative path of the artifact, starting with '/'.
+     */
+    void removed(String path);
+}
@@ -0,0 +1,63 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the first few artifacts removed from a repository, to show what happened, and optionally writes all of them
+ * to a file, one path per line. Memory use does not depend on the size of the repository.
+ */
+class RemovalLog implements RemovalListener, Closeable {
+
+    private final int sampleSize;
+    private final List<String> sample = new ArrayList<String>();
+    private final File file;
+    private final Writer out;
+    private boolean failed;
+
+    /**
+     * @param file where to write all the artifacts removed, or null to only keep the sample.
+     */
+    RemovalLog(int sampleSize, File file) throws IOException {
+        this.sampleSize = sampleSize;
+        this.file = file;
+        this.out = file != null ? new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) : null;
+    }
+
+    public void removed(String path) {
+        if (sample.size() < sampleSize) {
+            sample.add(path);
+        }
+        if (out != null && !failed) {
+            try {
+                out.write(path);
+                out.write('\n');
+            } catch (IOException e) {
+                // don't fail the cleanup for the sake of its log
+                LOGGER.log(Level.WARNING, "Failed to write to " + file, e);
+                failed = true;
+            }
+        }
+    }
+
+    List<String> getSample() {
+        return sample;
+    }
+
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(RemovalLog.class.getName());
+}
@@ -1,97 +1,411 @@
 package org.jenkinsci.plugins.mavenrepocleaner;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import hudson.os.PosixAPI;
-import org.apache.commons.io.DirectoryWalker;
-import org.apache.maven.artifact.repository.metadata.Metadata;
-import org.apache.maven.artifact.repository.metadata.Snapshot;
-import org.apache.maven.index.artifact.Gav;
 import org.apache.maven.index.artifact.M2GavCalculator;
-import org.jruby.ext.posix.FileStat;
-import org.kohsuke.args4j.CmdLineException;
-import org.kohsuke.args4j.CmdLineParser;
-
-import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
- * Hello world!
+ * Removes the artifacts of a local maven repository that have not been accessed since a given time or, given a size
+ * budget, the least recently accessed artifacts until the repository fits in the budget.
  *
  */
-public class RepositoryCleaner extends DirectoryWalker
+public class RepositoryCleaner
 {
+    /**
+     * How the cleaner tells which artifacts were accessed during the build.
+     */
+    public enum AccessTracking {
+        /** The access time of the files, only reliable on file systems mounted with {@code strictatime}. */
+        ATIME,
+        /**
+         * The access time of the files, re-armed on every cleanup for {@code relatime} file systems, which only update
+         * it when it is older than the modification time. An artifact is only known to be used from the second
+         * cleanup on.
+         */
+        RELATIME,
+        /**
+         * What the {@link AccessJournalRecorder} saw Maven resolve, on top of the access time for artifacts that were
+         * downloaded during the build. For {@code noatime} file systems, only works with maven jobs.
+         */
+        JOURNAL
+    }
+
     private M2GavCalculator gavCalculator = new M2GavCalculator();
     private long olderThan;
-    private String root;
+    private int parallelism = 1;
+    private boolean incremental;
+    private long sizeBudget;
+    private int snapshotRetention;
+    private volatile EvictionQueue candidates;
+    private RemovalListener listener;
+    private CleanupMetrics metrics = new CleanupMetrics();
+    private AccessTracking accessTracking = AccessTracking.ATIME;
+    /** Locations of the version directories in the {@link AccessJournal}, only while cleaning and if there is one. */
+    private Set<String> journaled;
+    private CleanupPolicy policy;
+    private boolean dryRun;
+    private volatile CleanupPlan plan;
+    private Path root;
+    private IoThrottle throttle = IoThrottle.NONE;
+    private SharedRepository.References references;
+    private boolean verifyChecksums;
+    /** Only while the first sweep of a cleanup walks the repository. */
+    private volatile ChecksumVerifier verifier;
 
     public RepositoryCleaner(long timestamp) {
         this.olderThan = timestamp / 1000;
     }
 
+    /**
+     * Number of threads sweeping the repository, anything below 2 walks it on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Whether to keep a {@link RepositoryIndex} in the repository, so that the next sweep doesn't need to list the
+     * directories that did not change in between.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Bytes of artifacts the repository may hold, 0 to remove the artifacts not accessed since the given time instead.
+     */
+    public void setSizeBudget(long sizeBudget) {
+        this.sizeBudget = sizeBudget;
+    }
+
+    /**
+     * Number of timestamped builds kept per snapshot, on top of those its {@code maven-metadata*.xml} refer to, 0 to
+     * leave snapshots to the other rules.
+     */
+    public void setSnapshotRetention(int snapshotRetention) {
+        this.snapshotRetention = snapshotRetention;
+    }
+
+    public void setAccessTracking(AccessTracking accessTracking) {
+        this.accessTracking = accessTracking;
+    }
+
+    /**
+     * Whether the artifacts kept are hashed against their checksum files, to remove the corrupt ones along with the
+     * leftovers of failed downloads and the entries of {@code _remote.repositories} that point to nothing. When
+     * incremental, artifacts are only hashed again once they changed.
+     */
+    public void setVerifyChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+    }
+
+    /**
+     * Restricts the artifacts that may be removed, null to consider all of them. The other settings of the policy are
+     * up to the caller.
+     */
+    public void setPolicy(CleanupPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Whether the cleanup only makes a {@link CleanupPlan} of what it would remove, leaving the repository untouched.
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * What the last cleanup would have removed, if it was a dry run.
+     */
+    public CleanupPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Limits the stats and deletes of the cleanup.
+     */
+    void setThrottle(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * What other builds used, when cleaning a {@link SharedRepository}.
+     */
+    void setReferences(SharedRepository.References references) {
+        this.references = references;
+    }
+
+    ChecksumVerifier getVerifier() {
+        return verifier;
+    }
+
+    IoThrottle getThrottle() {
+        return throttle;
+    }
+
+    int getSnapshotRetention() {
+        return snapshotRetention;
+    }
+
+    /**
+     * What the last cleanup did.
+     */
+    public CleanupMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Cleans a repository, returning all the artifacts removed. Prefer {@link #clean(File, RemovalListener)} for large
+     * repositories.
+     */
     public Collection<String> clean(File repository) throws IOException {
-        this.root = repository.getAbsolutePath();
-        Collection<String> result = new ArrayList<String>();
-        walk(repository, result);
+        final Collection<String> result = new ArrayList<String>();
+        clean(repository, new RemovalListener() {
+            public void removed(String path) {
+                result.add(path);
+            }
+        });
         return result;
     }
 
-    protected final void handleDirectoryStart(File directory, int depth, Collection results) throws IOException {
+    /**
+     * Cleans a repository, telling the listener about each artifact removed.
+     */
+    public void clean(File repository, RemovalListener listener) throws IOException {
+        metrics = new CleanupMetrics();
+        this.listener = listener;
+        long started = System.currentTimeMillis();
+        Path root = repository.toPath().toAbsolutePath();
+        this.root = root;
+        this.plan = dryRun ? new CleanupPlan() : null;
+        // hashing is mostly waiting for the disk, so it gets threads even when the walk doesn't
+        this.verifier = verifyChecksums ? new ChecksumVerifier(this, Math.max(parallelism, 2)) : null;
+        try {
+            if (accessTracking == AccessTracking.JOURNAL && Files.isDirectory(root)) {
+                // a dry run leaves the journal to the actual cleanup
+                journaled = dryRun ? AccessJournal.read(root) : AccessJournal.take(root);
+            }
+            clean(root);
+        } finally {
+            if (verifier != null) {
+                verifier.abort();
+                verifier = null;
+            }
+            this.listener = null;
+            this.journaled = null;
+            metrics.setWallTime(System.currentTimeMillis() - started);
+        }
+    }
+
+    private void clean(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        if (sizeBudget <= 0) {
+            sweep(root);
+            return;
+        }
+
+        for (int pass = 1; ; pass++) {
+            EvictionQueue queue = new EvictionQueue(EVICTION_CANDIDATES);
+            candidates = queue;
+            try {
+                sweep(root);
+            } finally {
+                candidates = null;
+            }
+            // the candidates of a dry run are still there, another pass would only find them again
+            if (!evict(root, queue) || pass == EVICTION_PASSES || dryRun) {
+                return;
+            }
+        }
+    }
 
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) continue;
-            String fileName = file.getName();
+    private void sweep(Path root) throws IOException {
+        if (parallelism <= 1 && !incremental) {
+            Files.walkFileTree(root, new RepositoryScanner(this, gavCalculator, root, null, null, metrics));
+            verified();
+            return;
+        }
 
-            if (fileName.endsWith(".sha1") || fileName.endsWith(".md5")) continue;
+        long started = System.currentTimeMillis();
+        RepositorySweepTask sweep = new RepositorySweepTask(this, root, incremental ? RepositoryIndex.open(root) : null);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+        try {
+            pool.invoke(sweep);
+            metrics.merge(sweep.getMetrics());
+        } finally {
+            pool.shutdown();
+        }
+        // before indexing, so that the index doesn't list what the verifier removes
+        verified();
+        if (incremental && !dryRun && Files.isDirectory(root)) {
+            try {
+                RepositoryIndex.write(root, started, sweep.getDirectories());
+            } catch (IOException e) {
+                // the next sweep will just have to list everything
+                LOGGER.log(Level.WARNING, "Failed to write the index of " + root, e);
+            }
+        }
+    }
 
-            String location = file.getAbsolutePath().substring(root.length());
-            Gav gav = gavCalculator.pathToGav(location);
-            if (gav == null) continue; // Not an artifact
+    /**
+     * Waits for the artifacts of the sweep to be verified, later sweeps of the same cleanup only look at what this one
+     * kept.
+     */
+    private void verified() throws IOException {
+        ChecksumVerifier v = verifier;
+        if (v != null) {
+            verifier = null;
+            v.finish(metrics);
+        }
+    }
 
-            olderThan(file, gav, results);
+    /**
+     * Passes on an artifact removed by one of the sweeping threads.
+     *
+     * @param path repository relative path of the artifact, starting with '/'.
+     */
+    synchronized void removed(String path, long size) {
+        if (plan != null) {
+            plan.artifact(path.substring(1), size);
         }
+        listener.removed(path);
+    }
 
-        if ( directory.listFiles(new MetadataFileFilter()).length == 0 ) {
-            for (File file : directory.listFiles()) {
-                file.delete();
+    /**
+     * Removes the oldest candidates until the repository fits in the budget.
+     *
+     * @return whether the repository is still over budget and the queue could not hold all candidates.
+     */
+    private boolean evict(Path root, EvictionQueue queue) {
+        long excess = queue.getTotal() - sizeBudget;
+        for (EvictionQueue.Candidate candidate : queue.oldestFirst()) {
+            if (excess <= 0) {
+                return false;
+            }
+            if (delete(candidate.file)) {
+                delete(candidate.file.resolveSibling(candidate.file.getFileName() + ".md5"));
+                delete(candidate.file.resolveSibling(candidate.file.getFileName() + ".sha1"));
+                metrics.removed(candidate.size);
+                excess -= candidate.size;
+                removed('/' + relative(candidate.file), candidate.size);
             }
-            directory.delete();
         }
+        return excess > 0 && queue.isOverflowed();
+    }
 
+    private boolean delete(Path path) {
+        if (plan != null) {
+            if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+            plan.file(relative(path));
+            return true;
+        }
+        throttle.acquire();
+        long started = System.nanoTime();
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to delete " + path, e);
+            return false;
+        } finally {
+            long nanos = System.nanoTime() - started;
+            metrics.deleted(nanos);
+            throttle.observe(nanos);
+        }
     }
 
-    private void olderThan(File file, Gav artifact, Collection results) {
-        FileStat fs = PosixAPI.get().lstat(file.getPath());
-        long lastAccessTime = fs.atime();
-        if (lastAccessTime < olderThan) {
-            // This artifact hasn't been accessed during build
-            clean(file, artifact, results);
+    String relative(Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Whether an artifact seen by the sweep should be removed: when it hasn't been accessed during build or, with a
+     * size budget, never right away but it becomes a candidate for eviction.
+     *
+     * @param location repository relative location of the directory of the artifact, as in the {@link AccessJournal}.
+     */
+    boolean shouldRemove(String location, String fileName, Path file, BasicFileAttributes attributes) {
+        boolean used = journaled != null && journaled.contains(location)
+                || references != null && (references.isReferenced(location) || references.isInUse(attributes));
+        EvictionQueue queue = candidates;
+        if (queue != null) {
+            queue.offer(file, attributes.size(), used ? System.currentTimeMillis() : attributes.lastAccessTime().toMillis());
+            return false;
         }
+        if (used || journaled != null && references == null && fileName.endsWith(".pom")) {
+            // Maven does not report all the POMs it reads, like those of the parents of dependencies; a shared
+            // repository would keep them all forever, along with their directories
+            return false;
+        }
+        return attributes.lastAccessTime().to(TimeUnit.SECONDS) < olderThan;
     }
 
-    private void clean(File file, Gav artifact, Collection results) {
-        File directory = file.getParentFile();
-        String fineName = gavCalculator.calculateArtifactName(artifact);
-        new File(directory, fineName + ".md5").delete();
-        new File(directory, fineName + ".sha1").delete();
-        file.delete();
-        results.add(gavCalculator.gavToPath(artifact));
+    /**
+     * Called for the artifacts kept by the sweep. With {@link AccessTracking#RELATIME}, moves their access time back to
+     * their modification time, so that the next read updates it.
+     */
+    void kept(Path file, BasicFileAttributes attributes) {
+        if (accessTracking != AccessTracking.RELATIME || candidates != null || dryRun
+                || attributes.lastAccessTime().compareTo(attributes.lastModifiedTime()) <= 0) {
+            return;
+        }
+        try {
+            Files.getFileAttributeView(file, BasicFileAttributeView.class)
+                    .setTimes(null, attributes.lastModifiedTime(), null);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to reset the access time of " + file, e);
+        }
     }
 
-    private static class MetadataFileFilter implements FileFilter {
+    /**
+     * Whether the policy lets the artifacts of a directory be removed.
+     */
+    boolean covers(String location) {
+        return policy == null || policy.covers(location);
+    }
 
-        private final List<String> metadata =
-            Arrays.asList(new String[]
-                    {"_maven.repositories", "maven-metadata.xml", "maven-metadata.xml.md5", "maven-metadata.xml.sha1"});
+    /**
+     * Accounts for an artifact the policy doesn't let be removed, but that still takes its share of the size budget.
+     */
+    void spared(long size) {
+        EvictionQueue queue = candidates;
+        if (queue != null) {
+            queue.spare(size);
+        }
+    }
 
-        public boolean accept(File file) {
-            return !metadata.contains(file.getName());
+    /**
+     * Accounts for an artifact that was seen by the sweep, then removed as an old build of a snapshot.
+     */
+    void pruned(long size) {
+        EvictionQueue queue = candidates;
+        if (queue != null) {
+            queue.forget(size);
         }
     }
-}
 
+    /**
+     * How many of the least recently accessed artifacts are remembered per pass when trimming to a size budget.
+     */
+    private static final int EVICTION_CANDIDATES = 10000;
+
+    private static final int EVICTION_PASSES = 4;
+
+    private static final Logger LOGGER = Logger.getLogger(RepositoryCleaner.class.getName());
+}
@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes whole repositories on a node.
+ * <p>
+ * With a purge rate, a repository is only renamed to a {@value #TRASH}&lt;timestamp&gt; sibling, which frees its path
+ * for the next build right away, and the {@link TrashPurger} of the node deletes it in the background.
+ * <p>
+ * With a {@link WarmPool}, the artifacts used lately are saved to the pool first, and the repository is seeded with
+ * them again once deleted.
+ */
+class RepositoryDeleter implements Serializable {
+
+    static final String TRASH = ".trash-";
+
+    /** Files per second the trash is purged at, 0 to delete synchronously. */
+    private final int purgeRate;
+    private final IoThrottle throttle;
+    private WarmPool pool;
+
+    RepositoryDeleter(int purgeRate, IoThrottle throttle) {
+        this.purgeRate = purgeRate;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Keeps the artifacts used lately in a pool of the node, null to delete them along with the repository.
+     */
+    void setPool(WarmPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Limits the deletes of synchronous deletions, and of the cleanups trimming repositories.
+     */
+    IoThrottle getThrottle() {
+        return throttle;
+    }
+
+    boolean isDeferred() {
+        return purgeRate > 0;
+    }
+
+    void delete(File repository) throws IOException {
+        delete(repository, null);
+    }
+
+    /**
+     * Deletes the repository of a job, seeding it from the warm pool again if the job still exists.
+     */
+    void delete(File repository, String job) throws IOException {
+        if (pool == null) {
+            remove(repository);
+            return;
+        }
+        List<String> saved = Collections.emptyList();
+        try {
+            saved = pool.save(repository);
+        } catch (IOException e) {
+            // what was not saved is downloaded again
+            LOGGER.log(Level.FINE, "Failed to save the artifacts of " + repository + " to the warm pool", e);
+        }
+        remove(repository);
+        if (!pool.seeds(job)) {
+            return;
+        }
+        try {
+            pool.seed(repository, saved);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to seed " + repository + " from the warm pool", e);
+        }
+    }
+
+    private void remove(File repository) throws IOException {
+        if (!isDeferred()) {
+            if (throttle.isLimited()) {
+                deleteThrottled(repository.toPath());
+            } else {
+                Util.deleteRecursive(repository);
+            }
+            return;
+        }
+        File trash = new File(repository.getParentFile(), repository.getName() + TRASH + System.currentTimeMillis());
+        try {
+            Files.move(repository.toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to move " + repository + " to trash, deleting it right away", e);
+            Util.deleteRecursive(repository);
+            return;
+        }
+        TrashPurger.purge(trash, purgeRate);
+    }
+
+    /**
+     * Deletes a tree bottom up, one {@link IoThrottle#acquire()} per file or directory.
+     */
+    private void deleteThrottled(Path repository) throws IOException {
+        Files.walkFileTree(repository, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            private void delete(Path path) throws IOException {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                throttle.acquire();
+                long started = System.nanoTime();
+                Files.deleteIfExists(path);
+                throttle.observe(System.nanoTime() - started);
+            }
+        });
+    }
+
+    /**
+     * Picks up the trash of a repository that was not purged yet, for instance because the node was restarted.
+     */
+    void purgeLeftovers(File repository) {
+        if (!isDeferred()) {
+            return;
+        }
+        final String prefix = repository.getName() + TRASH;
+        File[] trash = repository.getParentFile().listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.getName().startsWith(prefix) && f.isDirectory();
+            }
+        });
+        if (trash != null) {
+            for (File t : trash) {
+                TrashPurger.purge(t, purgeRate);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(RepositoryDeleter.class.getName());
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,116 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes the repositories a {@link NodeSweep} found expired, and trims those it found to be kept under a size budget
+ * or cleaned up as the {@link CleanupPolicy} of their job says. A dry run only reports what would be removed.
+ * <p>
+ * The master hands the repositories over one at a time, each right after checking that its job didn't start building
+ * or change since the sweep: deletions may have to wait for other nodes.
+ */
+class RepositoryDeletion implements FilePath.FileCallable<SweepReport> {
+
+    private final List<SweepReport.Entry> expired;
+    private final RepositoryDeleter deleter;
+    private final long sizeBudget;
+    private final int expirationDays;
+    private final Map<String, CleanupPolicy> policies;
+    private final boolean dryRun;
+
+    /**
+     * @param sizeBudget bytes repositories are trimmed to, 0 to trim the artifacts older than the expiration days.
+     * @param policies cleanup policies of the jobs that have one, by job directory name.
+     * @param dryRun whether to only report what would be removed, and how much space that would reclaim.
+     */
+    RepositoryDeletion(List<SweepReport.Entry> expired, RepositoryDeleter deleter, long sizeBudget, int expirationDays,
+                       Map<String, CleanupPolicy> policies, boolean dryRun) {
+        this.expired = expired;
+        this.deleter = deleter;
+        this.sizeBudget = sizeBudget;
+        this.expirationDays = expirationDays;
+        this.policies = policies;
+        this.dryRun = dryRun;
+    }
+
+    public SweepReport invoke(File root, VirtualChannel channel) throws IOException, InterruptedException {
+        SweepReport report = new SweepReport();
+        for (SweepReport.Entry entry : expired) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            File repo = new File(entry.repository);
+            try {
+                if (entry.outcome == SweepReport.Outcome.TRIM) {
+                    RepositoryCleaner cleaner = trimmer(policies.get(entry.job));
+                    cleaner.setDryRun(dryRun);
+                    cleaner.clean(repo, new RemovalLog(0, null));
+                    CleanupMetrics metrics = cleaner.getMetrics();
+                    if (dryRun) {
+                        report.planned(entry.job, repo, "Would remove " + metrics.getFilesRemoved() + " unused artifacts from "
+                                + repo + ", " + metrics.getBytesReclaimed() / MavenRepoCleanerPostBuildTask.MB + " MB");
+                    } else {
+                        report.trimmed(entry.job, repo, (int) metrics.getFilesRemoved());
+                    }
+                } else if (dryRun) {
+                    report.planned(entry.job, repo, "Would delete " + repo + ", "
+                            + size(repo) / MavenRepoCleanerPostBuildTask.MB + " MB");
+                } else {
+                    deleter.delete(repo, entry.job);
+                    report.deleted(entry.job, repo, entry.reason);
+                }
+            } catch (IOException e) {
+                report.failed(entry.job, repo, e);
+            }
+        }
+        return report;
+    }
+
+    static long size(File repo) throws IOException {
+        final long[] size = new long[1];
+        Files.walkFileTree(repo.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                size[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    private RepositoryCleaner trimmer(CleanupPolicy policy) {
+        int days = policy != null && policy.getMaxAge() > 0 ? policy.getMaxAge() : expirationDays;
+        RepositoryCleaner cleaner = new RepositoryCleaner(System.currentTimeMillis() - days * DAY);
+        cleaner.setThrottle(deleter.getThrottle());
+        if (policy != null) {
+            cleaner.setPolicy(policy);
+            cleaner.setSnapshotRetention(policy.getSnapshotRetention());
+        }
+        if (policy != null && policy.getSizeBudget() > 0) {
+            cleaner.setSizeBudget(policy.getSizeBudget() * MavenRepoCleanerPostBuildTask.MB);
+        } else {
+            cleaner.setSizeBudget(sizeBudget);
+        }
+        return cleaner;
+    }
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,330 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What the previous sweep saw of a repository, stored in {@value #FILE_NAME} next to the repository
+ * {@code .cleanupMarker}.
+ * <p>
+ * For every directory that survived the sweep, the index keeps its last modification time and its entries, with the
+ * size, modification and last access time of the artifacts, and whether they matched their checksum. Reading an
+ * artifact does not change the modification time of its directory, so artifacts still have to be stat'ed on every run;
+ * but a directory whose modification time did not move since the index was written doesn't need to be listed again,
+ * and its checksums and metadata don't need to be stat'ed. Neither do artifacts that were verified and didn't change
+ * since need to be hashed again.
+ * <p>
+ * The file is read in one go and looked up by binary search, so that only the directories visited are decoded:
+ * <pre>
+ * int magic, int version, long created, int count
+ * int[count] offsets of the directories, sorted by path
+ * per directory: short length, utf-8 path, long lastModified, int entries
+ * per entry: byte kind, short length, utf-8 name [, long size, long lastModified, long lastAccessed, byte verified
+ *            for artifacts]
+ * </pre>
+ */
+final class RepositoryIndex {
+
+    static final String FILE_NAME = ".cleanupIndex";
+
+    private static final int MAGIC = 0x4d524349;
+    private static final int VERSION = 2;
+    private static final int HEADER = 4 + 4 + 8 + 4;
+
+    /**
+     * Modification times closer than that to the creation of the index can't be trusted, the directory might have
+     * changed again within the same tick of a coarse grained file system clock.
+     */
+    private static final long GRANULARITY = 2000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final RepositoryIndex EMPTY = new RepositoryIndex(null, 0, 0);
+
+    /** Directories, artifacts and partial downloads are stat'ed again, whatever the index says. */
+    enum Kind { DIRECTORY, ARTIFACT, CHECKSUM, METADATA, OTHER, PARTIAL }
+
+    static final class Entry {
+        final Kind kind;
+        final String name;
+        final long size;
+        final long lastModified;
+        final long lastAccessed;
+        /** Whether the artifact matched its checksum, set by the {@link ChecksumVerifier} before the index is written. */
+        boolean verified;
+
+        Entry(Kind kind, String name, long size, long lastModified, long lastAccessed, boolean verified) {
+            this.kind = kind;
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.lastAccessed = lastAccessed;
+            this.verified = verified;
+        }
+
+        Entry(Kind kind, String name) {
+            this(kind, name, 0, 0, 0, false);
+        }
+    }
+
+    static final class Directory {
+        /** Repository relative path, using '/' as separator, empty for the repository itself. */
+        final String path;
+        final long lastModified;
+        final List<Entry> entries;
+
+        Directory(String path, long lastModified, List<Entry> entries) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+
+        Entry find(String name) {
+            for (Entry entry : entries) {
+                if (entry.name.equals(name)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final long created;
+    private final int count;
+
+    private RepositoryIndex(ByteBuffer buffer, long created, int count) {
+        this.buffer = buffer;
+        this.created = created;
+        this.count = count;
+    }
+
+    /**
+     * Reads the index of a repository, or returns an empty index if there is none or it can't be read.
+     */
+    static RepositoryIndex open(Path repository) {
+        Path file = repository.resolve(FILE_NAME);
+        try {
+            // not mapped: a mapping outlives the channel, and Windows won't replace a mapped file on the next write
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                LOGGER.fine("Ignoring " + file + " written by another version");
+                return EMPTY;
+            }
+            return new RepositoryIndex(buffer, buffer.getLong(8), buffer.getInt(16));
+        } catch (NoSuchFileException e) {
+            return EMPTY;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Ignoring unreadable " + file, e);
+            return EMPTY;
+        } catch (IndexOutOfBoundsException e) {
+            LOGGER.log(Level.FINE, "Ignoring truncated " + file, e);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Looks up what the previous sweep recorded for a directory.
+     *
+     * @return null if the directory is unknown or was modified since.
+     */
+    Directory get(String path, FileTime lastModified) {
+        if (lastModified == null || !isBefore(lastModified.toMillis())) {
+            return null;
+        }
+        return read(path, lastModified.toMillis());
+    }
+
+    /**
+     * Looks up what the previous sweep recorded for a directory, even if it was modified since, to tell which of its
+     * artifacts are still the same.
+     *
+     * @return null if the directory is unknown.
+     */
+    Directory getPrevious(String path) {
+        return read(path, -1);
+    }
+
+    /**
+     * Whether a modification time is old enough to tell that the previous sweep saw what was modified.
+     */
+    boolean isBefore(long lastModified) {
+        return lastModified <= created - GRANULARITY;
+    }
+
+    /**
+     * @param modified the modification time the directory must have been recorded with, -1 for any.
+     */
+    private Directory read(String path, long modified) {
+        if (count == 0) {
+            return null;
+        }
+        try {
+            // duplicate, so that concurrent lookups don't share a position
+            ByteBuffer buf = buffer.duplicate();
+            int offset = find(buf, path.getBytes(UTF8));
+            if (offset < 0) {
+                return null;
+            }
+            buf.position(offset);
+            skipString(buf);
+            long recorded = buf.getLong();
+            if (modified >= 0 && recorded != modified) {
+                return null;
+            }
+            int size = buf.getInt();
+            List<Entry> entries = new ArrayList<Entry>(size);
+            for (int i = 0; i < size; i++) {
+                Kind kind = Kind.values()[buf.get()];
+                String name = readString(buf);
+                if (kind == Kind.ARTIFACT) {
+                    entries.add(new Entry(kind, name, buf.getLong(), buf.getLong(), buf.getLong(), buf.get() != 0));
+                } else {
+                    entries.add(new Entry(kind, name));
+                }
+            }
+            return new Directory(path, recorded, entries);
+        } catch (BufferUnderflowException e) {
+            LOGGER.log(Level.FINE, "Corrupted repository index", e);
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            LOGGER.log(Level.FINE, "Corrupted repository index", e);
+            return null;
+        }
+    }
+
+    private int find(ByteBuffer buf, byte[] path) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = buf.getInt(HEADER + 4 * mid);
+            int cmp = compare(buf, offset, path);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private static int compare(ByteBuffer buf, int offset, byte[] path) {
+        int length = buf.getShort(offset) & 0xffff;
+        int n = Math.min(length, path.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buf.get(offset + 2 + i) & 0xff) - (path[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - path.length;
+    }
+
+    private static void skipString(ByteBuffer buf) {
+        int length = buf.getShort() & 0xffff;
+        buf.position(buf.position() + length);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xffff];
+        buf.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Replaces the index of a repository.
+     *
+     * @param created when the sweep that saw these directories started.
+     */
+    static void write(Path repository, long created, List<Directory> directories) throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>(directories.size());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        for (Directory directory : directories) {
+            bytes.reset();
+            writeString(record, directory.path);
+            record.writeLong(directory.lastModified);
+            record.writeInt(directory.entries.size());
+            for (Entry entry : directory.entries) {
+                record.writeByte(entry.kind.ordinal());
+                writeString(record, entry.name);
+                if (entry.kind == Kind.ARTIFACT) {
+                    record.writeLong(entry.size);
+                    record.writeLong(entry.lastModified);
+                    record.writeLong(entry.lastAccessed);
+                    record.writeBoolean(entry.verified);
+                }
+            }
+            record.flush();
+            records.add(bytes.toByteArray());
+        }
+        // records start with their path, so sorting them sorts by path
+        Collections.sort(records, BY_PATH);
+
+        Path tmp = repository.resolve(FILE_NAME + ".tmp");
+        OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp));
+        try {
+            DataOutputStream out = new DataOutputStream(os);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(created);
+            out.writeInt(records.size());
+            int offset = HEADER + 4 * records.size();
+            for (byte[] r : records) {
+                out.writeInt(offset);
+                offset += r.length;
+            }
+            for (byte[] r : records) {
+                out.write(r);
+            }
+            out.flush();
+        } finally {
+            os.close();
+        }
+        Files.move(tmp, repository.resolve(FILE_NAME),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(UTF8);
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    private static final Comparator<byte[]> BY_PATH = new Comparator<byte[]>() {
+        public int compare(byte[] a, byte[] b) {
+            int la = ((a[0] & 0xff) << 8) | (a[1] & 0xff);
+            int lb = ((b[0] & 0xff) << 8) | (b[1] & 0xff);
+            int n = Math.min(la, lb);
+            for (int i = 0; i < n; i++) {
+                int cmp = (a[2 + i] & 0xff) - (b[2 + i] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return la - lb;
+        }
+    };
+
+    private static final Logger LOGGER = Logger.getLogger(RepositoryIndex.class.getName());
+}
@@ -0,0 +1,558 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.maven.index.artifact.M2GavCalculator;
+
+/**
+ * Single pass over a local Maven repository.
+ * <p>
+ * Every entry is listed and stat'ed exactly once by {@link Files#walkFileTree}; the keep/delete decision for an
+ * artifact is taken as soon as its attributes are seen, and the directory itself is removed when it is left with
+ * nothing but repository metadata. Directories are left after their sub directories, so that a groupId or artifactId
+ * directory whose last version was removed goes away in the same walk instead of being walked again next time.
+ * <p>
+ * Stats and deletes go through the {@link IoThrottle} of the cleaner, the time taken to get to an entry being what
+ * the throttle adapts to.
+ * <p>
+ * With a {@link ChecksumVerifier}, the artifacts kept in a directory are handed over to it once the directory is done
+ * with, unless the previous index tells they were verified and didn't change since, and what failed or interrupted
+ * downloads left behind is removed on the way.
+ * <p>
+ * When given a list of {@link RepositoryIndex.Directory}, the scanner also records what is left of every directory it
+ * walked, for the next sweep to pick up.
+ */
+class RepositoryScanner extends SimpleFileVisitor<Path> {
+
+    private static final String SNAPSHOT = "-SNAPSHOT";
+
+    private static final Set<String> METADATA = new HashSet<String>(Arrays.asList(
+            "_maven.repositories", "_remote.repositories", "resolver-status.properties",
+            "maven-metadata.xml", "maven-metadata.xml.md5", "maven-metadata.xml.sha1"));
+
+    private final RepositoryCleaner cleaner;
+    private final M2GavCalculator gavCalculator;
+    private final Path root;
+    private final List<RepositoryIndex.Directory> index;
+    /** What the previous sweep recorded, null when not indexing. */
+    private final RepositoryIndex previous;
+    private final CleanupMetrics metrics;
+    private final IoThrottle throttle;
+    private final ChecksumVerifier verifier;
+    private final Deque<DirectoryState> stack = new ArrayDeque<DirectoryState>();
+    /** When the previous entry was done with, to time how long it took to get to the next one. */
+    private long lastVisit = System.nanoTime();
+    /** Whether the directory the walk started from was removed. */
+    private boolean removed;
+
+    RepositoryScanner(RepositoryCleaner cleaner, M2GavCalculator gavCalculator, Path root,
+                      RepositoryIndex previous, List<RepositoryIndex.Directory> index, CleanupMetrics metrics) {
+        this.cleaner = cleaner;
+        this.gavCalculator = gavCalculator;
+        this.root = root;
+        this.previous = previous;
+        this.index = index;
+        this.metrics = metrics;
+        this.throttle = cleaner.getThrottle();
+        this.verifier = cleaner.getVerifier();
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        DirectoryState parent = stack.peek();
+        if (parent != null) {
+            // a sub directory keeps its parent alive
+            parent.keep(RepositoryIndex.Kind.DIRECTORY, dir);
+        }
+        if (isBookkeeping(root, dir)) {
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+        boolean pruned = cleaner.getSnapshotRetention() > 0 && SnapshotPruning.isSnapshotDirectory(dir);
+        DirectoryState state = new DirectoryState(dir, attrs != null ? attrs.lastModifiedTime() : null, index != null,
+                pruned, verifier != null);
+        stack.push(state);
+        if (pruned && !covered(state)) {
+            state.artifacts = null;
+            state.snapshotMetadata = null;
+        }
+        lastVisit = System.nanoTime();
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (isBookkeeping(root, file)) {
+            stack.peek().keep(attrs.isDirectory() ? RepositoryIndex.Kind.DIRECTORY : RepositoryIndex.Kind.OTHER, file);
+            return FileVisitResult.CONTINUE;
+        }
+        if (!attrs.isDirectory()) {
+            long latency = System.nanoTime() - lastVisit;
+            metrics.scanned(latency);
+            throttle.observe(latency);
+            throttle.acquire();
+        }
+        DirectoryState state = stack.peek();
+        String fileName = file.getFileName().toString();
+        state.noteMetadata(fileName);
+
+        if (!attrs.isRegularFile()) {
+            state.keep(attrs.isDirectory() ? RepositoryIndex.Kind.DIRECTORY : RepositoryIndex.Kind.OTHER, file);
+        } else if (verifier != null && isPartial(fileName)) {
+            if (attrs.lastModifiedTime().toMillis() < System.currentTimeMillis() - PARTIAL_AGE && delete(file)) {
+                metrics.partial();
+            } else {
+                // until it is old enough
+                state.keep(RepositoryIndex.Kind.PARTIAL, file);
+            }
+        } else if (isMetadata(fileName)) {
+            state.metadata.add(fileName);
+        } else if (fileName.endsWith(".sha1") || fileName.endsWith(".md5")) {
+            state.checksums.add(fileName);
+        } else {
+            if (!isArtifact(state, fileName)) {
+                metrics.skipped(CleanupMetrics.SkipReason.NOT_AN_ARTIFACT);
+                state.keep(RepositoryIndex.Kind.OTHER, file);
+            } else if (!covered(state)) {
+                metrics.skipped(CleanupMetrics.SkipReason.POLICY);
+                cleaner.spared(attrs.size());
+                state.keepArtifact(fileName, attrs);
+            } else if (!cleaner.shouldRemove(location(state), fileName, file, attrs)) {
+                metrics.skipped(CleanupMetrics.SkipReason.RECENTLY_ACCESSED);
+                cleaner.kept(file, attrs);
+                state.keepArtifact(fileName, attrs);
+            } else if (delete(file)) {
+                metrics.removed(attrs.size());
+                state.removed.add(fileName);
+                cleaner.removed(location(state) + fileName, attrs.size());
+            } else {
+                metrics.skipped(CleanupMetrics.SkipReason.UNDELETABLE);
+                state.keepArtifact(fileName, attrs);
+            }
+        }
+        lastVisit = System.nanoTime();
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Takes into account an entry the index already knows about, without reading its attributes.
+     * Artifacts, directories and partial downloads still need to go through
+     * {@link #visitFile(Path, BasicFileAttributes)}.
+     */
+    void visitIndexed(Path file, RepositoryIndex.Kind kind) {
+        metrics.scanned(-1);
+        DirectoryState state = stack.peek();
+        String fileName = file.getFileName().toString();
+        state.noteMetadata(fileName);
+        switch (kind) {
+        case METADATA:
+            state.metadata.add(fileName);
+            break;
+        case CHECKSUM:
+            state.checksums.add(fileName);
+            break;
+        default:
+            state.keep(kind, file);
+        }
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException e) {
+        LOGGER.log(Level.FINE, "Failed to read " + file, e);
+        metrics.skipped(CleanupMetrics.SkipReason.UNREADABLE);
+        DirectoryState state = stack.peek();
+        if (state != null) {
+            // we don't know what it is, so better keep the directory (and don't index it)
+            state.others++;
+            state.complete = false;
+        }
+        lastVisit = System.nanoTime();
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+        DirectoryState state = stack.pop();
+
+        if (state.artifacts != null) {
+            prune(state);
+        }
+
+        for (String artifact : state.removed) {
+            removeChecksum(state, artifact + ".md5");
+            removeChecksum(state, artifact + ".sha1");
+        }
+
+        if (state.others == 0 && state.checksums.isEmpty() && !dir.equals(root)) {
+            // only repository metadata left
+            for (String name : state.metadata) {
+                delete(dir.resolve(name));
+            }
+            if (deleteDirectory(dir)) {
+                DirectoryState parent = stack.peek();
+                if (parent != null) {
+                    parent.removedDirectory(dir);
+                } else {
+                    removed = true;
+                }
+                lastVisit = System.nanoTime();
+                return FileVisitResult.CONTINUE;
+            }
+        }
+
+        if (verifier != null) {
+            List<RepositoryIndex.Entry> unverified = unverified(state);
+            if (!unverified.isEmpty()) {
+                verifier.verify(dir, location(state), unverified, state.checksums);
+            }
+        }
+
+        if (state.entries != null && state.complete) {
+            record(state);
+        }
+        lastVisit = System.nanoTime();
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Whether the directory the walk started from was removed, having been left empty.
+     */
+    boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Takes into account a sub directory of the current directory that was removed by a walk of its own.
+     */
+    void removedDirectory(Path dir) {
+        stack.peek().removedDirectory(dir);
+    }
+
+    /**
+     * Removes the timestamped builds of a snapshot that are neither recent nor referenced by its metadata, and keeps
+     * the metadata in line with what is left.
+     */
+    private void prune(DirectoryState state) {
+        SnapshotPruning pruning = new SnapshotPruning(state.dir, state.snapshotMetadata);
+        for (String name : pruning.expired(state.artifacts.keySet(), cleaner.getSnapshotRetention())) {
+            Path file = state.dir.resolve(name);
+            if (delete(file)) {
+                long size = state.artifacts.remove(name);
+                metrics.removed(size);
+                cleaner.pruned(size);
+                state.others--;
+                state.removed.add(name);
+                state.forget(name);
+                cleaner.removed(location(state) + name, size);
+            }
+        }
+        if (state.removed.isEmpty()) {
+            return;
+        }
+        CleanupPlan plan = cleaner.getPlan();
+        if (plan != null) {
+            plan.pruned(path(state), state.removed);
+        } else {
+            pruning.rewrite(state.removed);
+        }
+    }
+
+    /**
+     * The artifacts kept in a directory that need hashing, leaving out those that the previous index recorded as
+     * verified with the same size and modification time, which are taken as verified again.
+     */
+    private List<RepositoryIndex.Entry> unverified(DirectoryState state) {
+        RepositoryIndex.Directory known = previous != null && !state.kept.isEmpty()
+                ? previous.getPrevious(path(state)) : null;
+        List<RepositoryIndex.Entry> unverified = new ArrayList<RepositoryIndex.Entry>(state.kept.size());
+        for (RepositoryIndex.Entry entry : state.kept) {
+            if (state.removed.contains(entry.name)) {
+                continue;
+            }
+            RepositoryIndex.Entry before = known != null ? known.find(entry.name) : null;
+            if (before != null && before.verified && before.size == entry.size
+                    && before.lastModified == entry.lastModified && previous.isBefore(entry.lastModified)) {
+                entry.verified = true;
+            } else {
+                unverified.add(entry);
+            }
+        }
+        return unverified;
+    }
+
+    private void removeChecksum(DirectoryState state, String name) {
+        if (state.checksums.remove(name) && !delete(state.dir.resolve(name))) {
+            state.checksums.add(name);
+        }
+    }
+
+    private void record(DirectoryState state) {
+        FileTime lastModified = state.lastModified;
+        if (lastModified == null || !state.removed.isEmpty() || state.changed) {
+            try {
+                lastModified = Files.getLastModifiedTime(state.dir);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to read " + state.dir, e);
+                return;
+            }
+        }
+        List<RepositoryIndex.Entry> entries = state.entries;
+        for (String name : state.metadata) {
+            entries.add(new RepositoryIndex.Entry(RepositoryIndex.Kind.METADATA, name));
+        }
+        for (String name : state.checksums) {
+            entries.add(new RepositoryIndex.Entry(RepositoryIndex.Kind.CHECKSUM, name));
+        }
+        index.add(new RepositoryIndex.Directory(path(state), lastModified.toMillis(), entries));
+    }
+
+    /**
+     * Repository relative path of a file, using '/' as separator.
+     */
+    String path(Path file) {
+        String path = root.relativize(file).toString();
+        if (File.separatorChar != '/') {
+            path = path.replace(File.separatorChar, '/');
+        }
+        return path;
+    }
+
+    private String path(DirectoryState state) {
+        if (state.path == null) {
+            state.path = path(state.dir);
+        }
+        return state.path;
+    }
+
+    /**
+     * Repository relative location of a directory, ending with '/', that names of its files can be appended to to get
+     * the form expected by {@link M2GavCalculator#pathToGav(String)}.
+     */
+    private String location(DirectoryState state) {
+        if (state.location == null) {
+            String path = path(state);
+            state.location = path.isEmpty() ? "/" : '/' + path + '/';
+        }
+        return state.location;
+    }
+
+    /**
+     * Whether the cleanup policy lets the artifacts of a directory be removed, only asked once per directory.
+     */
+    private boolean covered(DirectoryState state) {
+        if (state.covered == null) {
+            state.covered = cleaner.covers(location(state));
+        }
+        return state.covered;
+    }
+
+    /**
+     * Whether a file only describes the artifacts of its directory, and goes away with them: the metadata and resolver
+     * status of Maven, including the {@code maven-metadata-<repository>.xml} of every remote repository.
+     */
+    private static boolean isMetadata(String fileName) {
+        if (METADATA.contains(fileName)) {
+            return true;
+        }
+        return fileName.startsWith("maven-metadata-")
+                && (fileName.endsWith(".xml") || fileName.endsWith(".xml.md5") || fileName.endsWith(".xml.sha1"));
+    }
+
+    /**
+     * Whether an entry at the root of the repository is what the cleanup itself keeps there: the marker, the index,
+     * the access journal and the references of the builds to a shared repository. Never removed nor walked into.
+     */
+    static boolean isBookkeeping(Path root, Path path) {
+        if (!root.equals(path.getParent())) {
+            return false;
+        }
+        String name = path.getFileName().toString();
+        return name.equals(SharedRepository.REFS) || name.equals(".cleanupMarker")
+                || name.startsWith(AccessJournal.FILE_NAME) || name.startsWith(RepositoryIndex.FILE_NAME);
+    }
+
+    /**
+     * Whether a file is the leftover of a download that failed or was interrupted: the {@code *.lastUpdated} files
+     * that keep Maven from trying again, and the temporary files downloads are written to.
+     */
+    private static boolean isPartial(String fileName) {
+        return fileName.endsWith(".lastUpdated") || fileName.endsWith(".part") || fileName.endsWith(".tmp");
+    }
+
+    /**
+     * Whether a file is an artifact. Files named after the artifactId and version of their directory are taken as
+     * such right away, only the others go through {@link M2GavCalculator}.
+     */
+    private boolean isArtifact(DirectoryState state, String fileName) {
+        String prefix = artifactPrefix(state);
+        if (prefix.length() > 0 && fileName.length() > prefix.length() && fileName.startsWith(prefix)) {
+            char next = fileName.charAt(prefix.length());
+            if (prefix.charAt(prefix.length() - 1) == '-' || next == '.' || next == '-') {
+                return true;
+            }
+        }
+        return gavCalculator.pathToGav(location(state) + fileName) != null;
+    }
+
+    /**
+     * What the artifacts of a version directory are named after, {@code artifactId-version} or, for a snapshot,
+     * {@code artifactId-baseVersion-}. Empty for directories too close to the root to hold artifacts.
+     */
+    private String artifactPrefix(DirectoryState state) {
+        if (state.artifactPrefix == null) {
+            Path dir = state.dir;
+            if (dir.getNameCount() - root.getNameCount() < 3) {
+                state.artifactPrefix = "";
+            } else {
+                String version = dir.getFileName().toString();
+                if (version.endsWith(SNAPSHOT)) {
+                    version = version.substring(0, version.length() - SNAPSHOT.length() + 1);
+                }
+                state.artifactPrefix = dir.getParent().getFileName() + "-" + version;
+            }
+        }
+        return state.artifactPrefix;
+    }
+
+    private boolean delete(Path path) {
+        CleanupPlan plan = cleaner.getPlan();
+        if (plan != null) {
+            plan.file(path(path));
+            return true;
+        }
+        throttle.acquire();
+        long started = System.nanoTime();
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to delete " + path, e);
+            return false;
+        } finally {
+            long nanos = System.nanoTime() - started;
+            metrics.deleted(nanos);
+            throttle.observe(nanos);
+        }
+    }
+
+    private boolean deleteDirectory(Path dir) {
+        CleanupPlan plan = cleaner.getPlan();
+        if (plan != null) {
+            plan.directory(path(dir));
+            return true;
+        }
+        return delete(dir);
+    }
+
+    /**
+     * What has been seen so far in a directory that is being walked.
+     */
+    private static final class DirectoryState {
+        final Path dir;
+        final FileTime lastModified;
+        /** Entries that keep the directory alive: sub directories, kept artifacts and anything unknown. */
+        int others;
+        final List<String> metadata = new ArrayList<String>(4);
+        final Set<String> checksums = new HashSet<String>();
+        final List<String> removed = new ArrayList<String>();
+        /** What to record in the index, null when not indexing. */
+        final List<RepositoryIndex.Entry> entries;
+        /** Whether all entries could be read, only then can the directory be indexed. */
+        boolean complete = true;
+        /** Whether a sub directory was removed, which the modification time of the directory doesn't tell yet. */
+        boolean changed;
+        /** Artifacts kept, to be verified, null unless verifying. */
+        final List<RepositoryIndex.Entry> kept;
+        /** Size of the artifacts kept so far by name, null unless snapshots of the directory are pruned. */
+        Map<String, Long> artifacts;
+        /** The {@code maven-metadata*.xml} files, when pruning. */
+        List<String> snapshotMetadata;
+        /** Computed once for all the files of the directory. */
+        String path;
+        String location;
+        String artifactPrefix;
+        Boolean covered;
+
+        DirectoryState(Path dir, FileTime lastModified, boolean indexed, boolean pruned, boolean verified) {
+            this.dir = dir;
+            this.lastModified = lastModified;
+            this.entries = indexed ? new ArrayList<RepositoryIndex.Entry>() : null;
+            this.artifacts = pruned ? new HashMap<String, Long>() : null;
+            this.snapshotMetadata = pruned ? new ArrayList<String>(2) : null;
+            this.kept = verified ? new ArrayList<RepositoryIndex.Entry>() : null;
+        }
+
+        void keepArtifact(String name, BasicFileAttributes attrs) {
+            others++;
+            RepositoryIndex.Entry entry = new RepositoryIndex.Entry(RepositoryIndex.Kind.ARTIFACT, name, attrs.size(),
+                    attrs.lastModifiedTime().toMillis(), attrs.lastAccessTime().toMillis(), false);
+            if (entries != null) {
+                entries.add(entry);
+            }
+            if (kept != null) {
+                kept.add(entry);
+            }
+            if (artifacts != null) {
+                artifacts.put(name, attrs.size());
+            }
+        }
+
+        void noteMetadata(String name) {
+            if (snapshotMetadata != null && SnapshotPruning.isMetadata(name)) {
+                snapshotMetadata.add(name);
+            }
+        }
+
+        /**
+         * Takes an entry that was kept out of the index again.
+         */
+        void forget(String name) {
+            if (entries != null) {
+                for (Iterator<RepositoryIndex.Entry> i = entries.iterator(); i.hasNext(); ) {
+                    if (i.next().name.equals(name)) {
+                        i.remove();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * A sub directory no longer keeps the directory alive.
+         */
+        void removedDirectory(Path sub) {
+            others--;
+            changed = true;
+            forget(sub.getFileName().toString());
+        }
+
+        void keep(RepositoryIndex.Kind kind, Path file) {
+            others++;
+            if (entries != null) {
+                entries.add(new RepositoryIndex.Entry(kind, file.getFileName().toString()));
+            }
+        }
+    }
+
+    /** Leftovers of downloads younger than that may belong to a build still downloading. */
+    private static final long PARTIAL_AGE = 60 * 60 * 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(RepositoryScanner.class.getName());
+}
@@ -0,0 +1,175 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.maven.index.artifact.M2GavCalculator;
+
+/**
+ * Sweeps one directory of a repository as part of a {@link java.util.concurrent.ForkJoinPool}.
+ * <p>
+ * The top levels of the repository (groupId and artifactId directories) are split into one task per sub directory,
+ * anything deeper is walked sequentially by a {@link RepositoryScanner} of its own. Every task counts what it did in
+ * its own {@link CleanupMetrics}, so that no synchronization is needed until the tasks are joined.
+ * <p>
+ * A task tells the one of the parent directory whether it removed its directory, so that directories left empty are
+ * removed bottom up by the same sweep.
+ * <p>
+ * With a {@link RepositoryIndex}, every directory is visited by a task, so that directories that did not change since
+ * the previous sweep are taken from the index instead of being listed.
+ */
+class RepositorySweepTask extends RecursiveAction {
+
+    /**
+     * Directories below that depth are not split any further.
+     */
+    static final int SPLIT_DEPTH = 3;
+
+    private final RepositoryCleaner cleaner;
+    private final Path root;
+    private final RepositoryIndex index;
+    private final Path dir;
+    private BasicFileAttributes attrs;
+    private final int depth;
+    private final List<RepositoryIndex.Directory> directories;
+    private final CleanupMetrics metrics = new CleanupMetrics();
+    private boolean removed;
+
+    RepositorySweepTask(RepositoryCleaner cleaner, Path root, RepositoryIndex index) {
+        this(cleaner, root, index, root, null, 0);
+    }
+
+    private RepositorySweepTask(RepositoryCleaner cleaner, Path root, RepositoryIndex index,
+                                Path dir, BasicFileAttributes attrs, int depth) {
+        this.cleaner = cleaner;
+        this.root = root;
+        this.index = index;
+        this.dir = dir;
+        this.attrs = attrs;
+        this.depth = depth;
+        this.directories = index != null ? new ArrayList<RepositoryIndex.Directory>() : null;
+    }
+
+    /**
+     * What is left of the directories swept by this task, to be written to the next index.
+     * Only available once the task completed.
+     */
+    List<RepositoryIndex.Directory> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * What this task and its sub tasks did, only available once the task completed.
+     */
+    CleanupMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    protected void compute() {
+        // M2GavCalculator keeps no state, but is not documented as thread safe
+        RepositoryScanner scanner = new RepositoryScanner(cleaner, new M2GavCalculator(), root, index,
+                directories, metrics);
+
+        if (index == null && depth >= SPLIT_DEPTH) {
+            try {
+                Files.walkFileTree(dir, scanner);
+            } catch (IOException e) {
+                scanner.visitFileFailed(dir, e);
+            }
+            removed = scanner.isRemoved();
+            return;
+        }
+
+        if (attrs == null) {
+            try {
+                attrs = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                scanner.visitFileFailed(dir, e);
+                return;
+            }
+        }
+
+        List<RepositorySweepTask> subtasks = new ArrayList<RepositorySweepTask>();
+        scanner.preVisitDirectory(dir, attrs);
+        RepositoryIndex.Directory known = index != null ? index.get(scanner.path(dir), attrs.lastModifiedTime()) : null;
+        if (known != null) {
+            visitIndexed(scanner, known, subtasks);
+        } else {
+            visitListed(scanner, subtasks);
+        }
+
+        if (depth < SPLIT_DEPTH) {
+            invokeAll(subtasks);
+        } else {
+            for (RepositorySweepTask subtask : subtasks) {
+                subtask.invoke();
+            }
+        }
+        for (RepositorySweepTask subtask : subtasks) {
+            subtask.join();
+            metrics.merge(subtask.metrics);
+            if (directories != null) {
+                directories.addAll(subtask.directories);
+            }
+            if (subtask.removed) {
+                scanner.removedDirectory(subtask.dir);
+            }
+        }
+        scanner.postVisitDirectory(dir, null);
+        removed = scanner.isRemoved();
+    }
+
+    private void visitListed(RepositoryScanner scanner, List<RepositorySweepTask> subtasks) {
+        try {
+            DirectoryStream<Path> entries = Files.newDirectoryStream(dir);
+            try {
+                for (Path entry : entries) {
+                    visit(scanner, entry, subtasks);
+                }
+            } finally {
+                entries.close();
+            }
+        } catch (IOException e) {
+            scanner.visitFileFailed(dir, e);
+        }
+    }
+
+    private void visitIndexed(RepositoryScanner scanner, RepositoryIndex.Directory known,
+                              List<RepositorySweepTask> subtasks) {
+        for (RepositoryIndex.Entry entry : known.entries) {
+            Path file = dir.resolve(entry.name);
+            switch (entry.kind) {
+            case DIRECTORY:
+            case ARTIFACT:
+            case PARTIAL:
+                visit(scanner, file, subtasks);
+                break;
+            default:
+                scanner.visitIndexed(file, entry.kind);
+            }
+        }
+    }
+
+    private void visit(RepositoryScanner scanner, Path entry, List<RepositorySweepTask> subtasks) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            scanner.visitFileFailed(entry, e);
+            return;
+        }
+        if (attrs.isDirectory() && !RepositoryScanner.isBookkeeping(root, entry)) {
+            subtasks.add(new RepositorySweepTask(cleaner, root, index, entry, attrs, depth + 1));
+        }
+        // sub directories are accounted for like any other entry that keeps this directory
+        scanner.visitFile(entry, attrs);
+    }
+}
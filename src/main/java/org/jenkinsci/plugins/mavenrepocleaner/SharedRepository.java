@@ -0,0 +1,294 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A local repository that the builds of several jobs use on a node, like {@code ~/.m2/repository}, and that is cleaned
+ * up by reference: an artifact is only removed when no build used it within the retention window.
+ * <p>
+ * The {@code .cleanup-refs} directory of the repository holds
+ * <ul>
+ * <li>a {@code .lease} file per running build that resolves from the repository, written when the build starts: what
+ * was read or downloaded since the earliest of them stays, as the build may not have recorded it yet,</li>
+ * <li>a {@code .bloom} {@link ReferenceFilter} per build that recorded what it used with the
+ * {@link AccessJournalRecorder}, kept for the retention window.</li>
+ * </ul>
+ * The sweep goes on while builds run, picking up the leases and filters they write in the meantime. Builds that don't
+ * resolve from the repository take no lease; those that use it outside of a maven job, like freestyle ones running
+ * Maven themselves, are only covered by the access time of the artifacts.
+ */
+final class SharedRepository {
+
+    static final String REFS = ".cleanup-refs";
+
+    /**
+     * Leases of builds the master doesn't know as running were left by builds whose end was missed, like when the
+     * master went down, unless they are younger than that: the build may have started since the master looked.
+     */
+    private static final long LEASE_GRACE = TimeUnit.MINUTES.toMillis(10);
+
+    private SharedRepository() {
+    }
+
+    /**
+     * The repository a path configured for all nodes stands for on the current one, with a leading {@code ~/} for
+     * the home directory of the user running it.
+     */
+    static File resolve(String path) {
+        if (path.equals("~") || path.startsWith("~/")) {
+            return new File(System.getProperty("user.home"), path.substring(1));
+        }
+        return new File(path);
+    }
+
+    static String leaseName(String job, int number) {
+        return job.replace('/', '_') + '-' + number + ".lease";
+    }
+
+    /**
+     * Takes or releases the lease of a build on the shared repository of its node, when the repository exists.
+     */
+    static final class Lease implements FilePath.FileCallable<Void> {
+        private final String repository;
+        private final String name;
+        private final boolean take;
+
+        Lease(String repository, String name, boolean take) {
+            this.repository = repository;
+            this.name = name;
+            this.take = take;
+        }
+
+        public Void invoke(File f, VirtualChannel channel) throws IOException {
+            File repo = resolve(repository);
+            if (!repo.isDirectory()) {
+                return null;
+            }
+            File refs = new File(repo, REFS);
+            if (take) {
+                if (!refs.isDirectory() && !refs.mkdirs()) {
+                    throw new IOException("Failed to create " + refs);
+                }
+                Files.write(new File(refs, name).toPath(), new byte[0]);
+            } else {
+                Files.deleteIfExists(new File(refs, name).toPath());
+            }
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Removes the artifacts of the shared repository of a node that no build used within the retention window, nor a
+     * running build since it started.
+     */
+    static final class Sweep implements FilePath.FileCallable<SweepReport> {
+        private final String repository;
+        private final int retentionDays;
+        private final Set<String> running;
+        private final IoThrottle throttle;
+        private final boolean dryRun;
+
+        /**
+         * @param running lease names of the builds the master knows as running, whose leases hold however old.
+         */
+        Sweep(String repository, int retentionDays, Set<String> running, IoThrottle throttle, boolean dryRun) {
+            this.repository = repository;
+            this.retentionDays = retentionDays;
+            this.running = running;
+            this.throttle = throttle;
+            this.dryRun = dryRun;
+        }
+
+        public SweepReport invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            SweepReport report = new SweepReport();
+            File repo = resolve(repository);
+            if (!repo.isDirectory()) {
+                return report;
+            }
+            Path refs = repo.toPath().resolve(REFS);
+            if (!Files.isDirectory(refs)) {
+                // builds only start leaving filters once the directory is there
+                Files.createDirectories(refs);
+                report.kept(JOB, repo, "References to " + repo + " are only tracked from now on, postponing its cleanup");
+                return report;
+            }
+            long olderThan = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+            References references = new References(refs, olderThan, running);
+            RepositoryCleaner cleaner = new RepositoryCleaner(olderThan);
+            cleaner.setAccessTracking(RepositoryCleaner.AccessTracking.JOURNAL);
+            cleaner.setThrottle(throttle);
+            cleaner.setDryRun(dryRun);
+            cleaner.setReferences(references);
+            try {
+                cleaner.clean(repo, new RemovalLog(0, null));
+            } catch (IOException e) {
+                report.failed(JOB, repo, e);
+                return report;
+            }
+            CleanupMetrics metrics = cleaner.getMetrics();
+            if (dryRun) {
+                report.planned(JOB, repo, "Would remove " + metrics.getFilesRemoved() + " unreferenced artifacts from "
+                        + repo + ", " + metrics.getBytesReclaimed() / MavenRepoCleanerPostBuildTask.MB + " MB");
+            } else {
+                report.trimmed(JOB, repo, (int) metrics.getFilesRemoved());
+            }
+            return report;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * What the builds of the retention window used, and since when builds are running, for the
+     * {@link RepositoryCleaner} to check every artifact against.
+     */
+    static final class References {
+        private final Path refs;
+        private final long olderThan;
+        private final ReferenceFilter used = new ReferenceFilter();
+        /** Modification time of the filters merged so far, by name: a running build rewrites its own. */
+        private final Map<String, Long> merged = new HashMap<String, Long>();
+        /** When the earliest running build took its lease, {@link Long#MAX_VALUE} if none is running. */
+        private volatile long leasedSince = Long.MAX_VALUE;
+        private long modified;
+        private long checked;
+
+        /**
+         * Merges the filters of the retention window, deleting the older ones and the leases of builds that are over.
+         */
+        References(Path refs, long olderThan, Set<String> running) throws IOException {
+            this.refs = refs;
+            this.olderThan = olderThan;
+            long now = System.currentTimeMillis();
+            modified = Files.getLastModifiedTime(refs).toMillis();
+            checked = now;
+            DirectoryStream<Path> entries = Files.newDirectoryStream(refs);
+            try {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    long lastModified = attrs.lastModifiedTime().toMillis();
+                    if (name.endsWith(".lease") && !running.contains(name) && now - lastModified > LEASE_GRACE) {
+                        Files.deleteIfExists(entry);
+                    } else if (name.endsWith(".bloom") && lastModified < olderThan) {
+                        Files.deleteIfExists(entry);
+                    } else {
+                        add(entry, name, lastModified);
+                    }
+                }
+            } finally {
+                entries.close();
+            }
+        }
+
+        private void add(Path entry, String name, long lastModified) throws IOException {
+            if (name.endsWith(".lease")) {
+                leasedSince = Math.min(leasedSince, lastModified);
+            } else if (name.endsWith(".bloom") && lastModified >= olderThan) {
+                Long known = merged.get(name);
+                if (known != null && known == lastModified) {
+                    return;
+                }
+                try {
+                    ReferenceFilter filter = ReferenceFilter.read(entry);
+                    if (filter != null) {
+                        // a filter only ever grows, so merging the new one over the old one is enough
+                        used.merge(filter);
+                        merged.put(name, lastModified);
+                    }
+                } catch (NoSuchFileException e) {
+                    // rewritten in between, the new one replaces it
+                }
+            }
+        }
+
+        /**
+         * When the earliest running build started using the repository, {@link Long#MAX_VALUE} if none is.
+         */
+        long getLeasedSince() {
+            return leasedSince;
+        }
+
+        /**
+         * Whether the artifacts of a directory may have been used within the retention window, including by the
+         * builds that recorded something since the sweep began.
+         *
+         * @param location repository relative location of the directory, like {@code /g/a/1.0/}.
+         */
+        synchronized boolean isReferenced(String location) {
+            refresh();
+            return used.mightContain(location);
+        }
+
+        /**
+         * Whether an artifact was read or downloaded since a running build started: the build may not have recorded
+         * it yet.
+         */
+        boolean isInUse(BasicFileAttributes attributes) {
+            long since = leasedSince;
+            return attributes.lastAccessTime().toMillis() >= since || attributes.lastModifiedTime().toMillis() >= since;
+        }
+
+        /**
+         * Lists the references again when the directory changed, at most once a second, to pick up the builds that
+         * started and the filters that were written since the sweep began.
+         */
+        private void refresh() {
+            long now = System.currentTimeMillis();
+            if (now - checked < 1000) {
+                return;
+            }
+            checked = now;
+            try {
+                long m = Files.getLastModifiedTime(refs).toMillis();
+                if (m == modified) {
+                    return;
+                }
+                modified = m;
+                DirectoryStream<Path> entries = Files.newDirectoryStream(refs);
+                try {
+                    for (Path entry : entries) {
+                        try {
+                            add(entry, entry.getFileName().toString(), Files.getLastModifiedTime(entry).toMillis());
+                        } catch (NoSuchFileException e) {
+                            // released or rewritten in between
+                        }
+                    }
+                } finally {
+                    entries.close();
+                }
+            } catch (IOException e) {
+                // can't tell, so better keep everything from now on
+                LOGGER.log(Level.FINE, "Failed to list the references in " + refs, e);
+                leasedSince = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    /** Stands for the job in the reports of the shared repositories, which belong to none. */
+    private static final String JOB = "(shared)";
+
+    private static final Logger LOGGER = Logger.getLogger(SharedRepository.class.getName());
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.maven.MavenModuleSet;
+import hudson.model.AbstractBuild;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes a lease on the {@link SharedRepository} of its node for every running build of a maven job that resolves from
+ * it, so that the sweep keeps what the build uses even before the build recorded it. Freestyle jobs and maven jobs with
+ * a private repository don't take one.
+ */
+@Extension
+public class SharedRepositoryLeases extends RunListener<AbstractBuild> {
+
+    public SharedRepositoryLeases() {
+        super(AbstractBuild.class);
+    }
+
+    @Override
+    public void onStarted(AbstractBuild build, TaskListener listener) {
+        lease(build, true);
+    }
+
+    @Override
+    public void onCompleted(AbstractBuild build, TaskListener listener) {
+        lease(build, false);
+    }
+
+    private void lease(AbstractBuild build, boolean take) {
+        MavenRepoCleanerProperty.DescriptorImpl d = (MavenRepoCleanerProperty.DescriptorImpl)
+                Hudson.getInstance().getDescriptor(MavenRepoCleanerProperty.class);
+        String repository = d != null ? d.getSharedRepository() : null;
+        Node node = build.getBuiltOn();
+        FilePath root = node != null ? node.getRootPath() : null;
+        if (repository == null || root == null || !usesSharedRepository(build)) {
+            return;
+        }
+        try {
+            root.act(new SharedRepository.Lease(repository,
+                    SharedRepository.leaseName(build.getParent().getFullName(), build.getNumber()), take));
+        } catch (IOException e) {
+            // an unreleased lease goes stale, a missing one leaves the build to the access time of the artifacts
+            LOGGER.log(Level.WARNING, "Failed to " + (take ? "take" : "release") + " the lease of " + build
+                    + " on the shared repository", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean usesSharedRepository(AbstractBuild build) {
+        return build.getProject() instanceof MavenModuleSet
+                && !((MavenModuleSet) build.getProject()).usesPrivateRepository();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(SharedRepositoryLeases.class.getName());
+}
@@ -0,0 +1,253 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+
+/**
+ * The {@code maven-metadata*.xml} files of a snapshot version directory, read at most once, which tell which timestamped
+ * builds of the snapshot Maven may still resolve.
+ * <p>
+ * A build is identified by its timestamp and build number, {@code 20120601.101500-3} in
+ * {@code foo-1.0-20120601.101500-3-sources.jar}. Files of the snapshot without a timestamp, like
+ * {@code foo-1.0-SNAPSHOT.jar}, are never pruned.
+ */
+final class SnapshotPruning {
+
+    private static final Pattern BUILD = Pattern.compile("(\\d{8}\\.\\d{6})-(\\d+)[-.].*");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SNAPSHOT = "-SNAPSHOT";
+
+    private final Path dir;
+    /** What the artifacts of the directory are named before the build. */
+    private final String prefix;
+    private final Collection<String> names;
+    /** Parsed on first use, most directories have no build to prune. */
+    private Map<String, Metadata> metadata;
+
+    /**
+     * @param names names of the {@code maven-metadata*.xml} files of the directory.
+     */
+    SnapshotPruning(Path dir, Collection<String> names) {
+        this.dir = dir;
+        this.names = names;
+        String version = dir.getFileName().toString();
+        this.prefix = dir.getParent().getFileName() + "-" + version.substring(0, version.length() - SNAPSHOT.length()) + "-";
+    }
+
+    static boolean isSnapshotDirectory(Path dir) {
+        return dir.getParent() != null && dir.getFileName().toString().endsWith(SNAPSHOT);
+    }
+
+    static boolean isMetadata(String fileName) {
+        return fileName.startsWith("maven-metadata") && fileName.endsWith(".xml");
+    }
+
+    /**
+     * Reads the metadata of the directory, skipping the files that cannot be parsed.
+     */
+    private Map<String, Metadata> metadata() {
+        if (metadata != null) {
+            return metadata;
+        }
+        metadata = new LinkedHashMap<String, Metadata>();
+        for (String name : names) {
+            Path file = dir.resolve(name);
+            try {
+                Reader r = Files.newBufferedReader(file, UTF8);
+                try {
+                    metadata.put(name, new MetadataXpp3Reader().read(r, false));
+                } finally {
+                    r.close();
+                }
+            } catch (Exception e) {
+                // IOException, or XmlPullParserException for a file Maven would not use either
+                LOGGER.log(Level.FINE, "Failed to read " + file, e);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Artifacts of builds older than the latest {@code retention} ones, and not referenced by the metadata.
+     *
+     * @param artifacts names of the artifacts of the directory.
+     */
+    List<String> expired(Collection<String> artifacts, int retention) {
+        Set<String> builds = new TreeSet<String>(NEWEST_FIRST);
+        for (String name : artifacts) {
+            String build = build(name);
+            if (build != null) {
+                builds.add(build);
+            }
+        }
+        if (builds.size() <= retention) {
+            return Collections.emptyList();
+        }
+        Set<String> kept = referenced();
+        Iterator<String> newest = builds.iterator();
+        for (int i = 0; i < retention && newest.hasNext(); i++) {
+            kept.add(newest.next());
+        }
+
+        List<String> expired = new ArrayList<String>();
+        for (String name : artifacts) {
+            String build = build(name);
+            if (build != null && !kept.contains(build)) {
+                expired.add(name);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Drops from the metadata the snapshot versions of removed artifacts, and updates the checksums of the metadata
+     * files that changed. Versions that were never downloaded stay, Maven may still need them.
+     *
+     * @param removed names of the artifacts removed from the directory.
+     */
+    void rewrite(Collection<String> removed) {
+        Set<String> gone = new HashSet<String>(removed);
+        for (Map.Entry<String, Metadata> entry : metadata().entrySet()) {
+            Versioning versioning = entry.getValue().getVersioning();
+            if (versioning == null || versioning.getSnapshotVersions() == null) {
+                continue;
+            }
+            boolean changed = false;
+            for (Iterator<SnapshotVersion> i = versioning.getSnapshotVersions().iterator(); i.hasNext(); ) {
+                if (gone.contains(fileName(i.next()))) {
+                    i.remove();
+                    changed = true;
+                }
+            }
+            if (changed) {
+                try {
+                    write(entry.getKey(), entry.getValue());
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to rewrite " + dir.resolve(entry.getKey()), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the metadata points at.
+     */
+    private Set<String> referenced() {
+        Set<String> referenced = new HashSet<String>();
+        for (Metadata m : metadata().values()) {
+            Versioning versioning = m.getVersioning();
+            if (versioning == null) {
+                continue;
+            }
+            Snapshot snapshot = versioning.getSnapshot();
+            if (snapshot != null && snapshot.getTimestamp() != null) {
+                referenced.add(snapshot.getTimestamp() + "-" + snapshot.getBuildNumber());
+            }
+            if (versioning.getSnapshotVersions() != null) {
+                for (SnapshotVersion version : versioning.getSnapshotVersions()) {
+                    String build = build(fileName(version));
+                    if (build != null) {
+                        referenced.add(build);
+                    }
+                }
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * The timestamp and build number in the name of an artifact, null if it has none.
+     */
+    private String build(String fileName) {
+        if (!fileName.startsWith(prefix)) {
+            return null;
+        }
+        Matcher m = BUILD.matcher(fileName.substring(prefix.length()));
+        return m.matches() ? m.group(1) + "-" + m.group(2) : null;
+    }
+
+    private String fileName(SnapshotVersion version) {
+        StringBuilder name = new StringBuilder(dir.getParent().getFileName().toString()).append('-').append(version.getVersion());
+        if (version.getClassifier() != null && version.getClassifier().length() > 0) {
+            name.append('-').append(version.getClassifier());
+        }
+        return name.append('.').append(version.getExtension()).toString();
+    }
+
+    private void write(String name, Metadata m) throws IOException {
+        Path file = dir.resolve(name);
+        Path tmp = dir.resolve(name + ".tmp");
+        Writer w = Files.newBufferedWriter(tmp, UTF8);
+        try {
+            new MetadataXpp3Writer().write(w, m);
+        } finally {
+            w.close();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        byte[] content = Files.readAllBytes(file);
+        for (String algorithm : new String[] { "md5", "sha1" }) {
+            Path checksum = dir.resolve(name + "." + algorithm);
+            if (Files.exists(checksum)) {
+                Files.write(checksum, digest(algorithm.equals("md5") ? "MD5" : "SHA-1", content).getBytes(UTF8));
+            }
+        }
+    }
+
+    private static String digest(String algorithm, byte[] content) throws IOException {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance(algorithm).digest(content)) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Latest timestamp first, then highest build number.
+     */
+    private static final Comparator<String> NEWEST_FIRST = Collections.reverseOrder(new Comparator<String>() {
+        public int compare(String a, String b) {
+            int dash = a.indexOf('-');
+            int c = a.substring(0, dash).compareTo(b.substring(0, b.indexOf('-')));
+            if (c != 0) {
+                return c;
+            }
+            return Integer.valueOf(a.substring(dash + 1)).compareTo(Integer.valueOf(b.substring(b.indexOf('-') + 1)));
+        }
+    });
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotPruning.class.getName());
+}
@@ -0,0 +1,95 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a {@link NodeSweep} did with the repositories of a node.
+ */
+class SweepReport implements Serializable {
+
+    enum Outcome {
+        DELETED,
+        /** Should be deleted, but was left for a later {@link RepositoryDeletion}. */
+        EXPIRED,
+        /** Should be trimmed to the size budget by a later {@link RepositoryDeletion}. */
+        TRIM,
+        /** Artifacts were removed to fit the size budget, or as the cleanup policy of the job says. */
+        TRIMMED,
+        /** Would have been deleted or trimmed, but this was a dry run. */
+        PLANNED,
+        KEPT,
+        FAILED
+    }
+
+    static final class Entry implements Serializable {
+        final String job;
+        final String repository;
+        final Outcome outcome;
+        /** Why the repository was kept or deleted. */
+        final String reason;
+        final IOException failure;
+
+        Entry(String job, String repository, Outcome outcome, String reason, IOException failure) {
+            this.job = job;
+            this.repository = repository;
+            this.outcome = outcome;
+            this.reason = reason;
+            this.failure = failure;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    void deleted(String job, File repository, String reason) {
+        entries.add(new Entry(job, repository.getPath(), Outcome.DELETED, reason, null));
+    }
+
+    void expired(String job, File repository, String reason) {
+        entries.add(new Entry(job, repository.getPath(), Outcome.EXPIRED, reason, null));
+    }
+
+    void trim(String job, File repository, String reason) {
+        entries.add(new Entry(job, repository.getPath(), Outcome.TRIM, reason, null));
+    }
+
+    void trimmed(String job, File repository, int removed) {
+        entries.add(new Entry(job, repository.getPath(), Outcome.TRIMMED,
+                removed + " unused artifacts removed from " + repository, null));
+    }
+
+    void planned(String job, File repository, String reason) {
+        entries.add(new Entry(job, repository.getPath(), Outcome.PLANNED, reason, null));
+    }
+
+    void kept(String job, File repository, String reason) {
+        entries.add(new Entry(job, repository.getPath(), Outcome.KEPT, reason, null));
+    }
+
+    void failed(String job, File repository, IOException failure) {
+        entries.add(new Entry(job, repository.getPath(), Outcome.FAILED, failure.getMessage(), failure));
+    }
+
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    List<Entry> getEntries(Outcome... outcomes) {
+        List<Entry> result = new ArrayList<Entry>();
+        for (Entry entry : entries) {
+            if (Arrays.asList(outcomes).contains(entry.outcome)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes repositories moved to trash, one at a time, on a low priority daemon thread of the node and at a limited
+ * number of files per second, so that running builds keep most of the disk.
+ * <p>
+ * The thread only lives while there is trash to purge.
+ */
+final class TrashPurger extends Thread {
+
+    private static TrashPurger thread;
+    private static final Queue<File> queue = new LinkedList<File>();
+    private static final Set<File> queued = new HashSet<File>();
+    private static volatile int rate;
+
+    private TrashPurger() {
+        super("maven-repo-cleanup trash purger");
+        setDaemon(true);
+        setPriority(MIN_PRIORITY);
+    }
+
+    /**
+     * Queues a directory for deletion, unless it already is.
+     *
+     * @param rate files deleted per second.
+     */
+    static synchronized void purge(File trash, int rate) {
+        TrashPurger.rate = rate;
+        if (!queued.add(trash)) {
+            return;
+        }
+        queue.add(trash);
+        if (thread == null) {
+            thread = new TrashPurger();
+            thread.start();
+        }
+    }
+
+    private static synchronized File next() {
+        File trash = queue.poll();
+        if (trash == null) {
+            thread = null;
+        }
+        return trash;
+    }
+
+    private static synchronized void done(File trash) {
+        queued.remove(trash);
+    }
+
+    private static synchronized void abandon() {
+        // leave what is queued to the next thread
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        File trash;
+        while ((trash = next()) != null) {
+            try {
+                Files.walkFileTree(trash.toPath(), new Purge());
+            } catch (InterruptedIOException e) {
+                abandon();
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to purge " + trash, e);
+            } finally {
+                done(trash);
+            }
+        }
+    }
+
+    /**
+     * Deletes a tree bottom up, sleeping whenever it gets ahead of the rate.
+     */
+    private static final class Purge extends SimpleFileVisitor<Path> {
+        private final long started = System.nanoTime();
+        private long deleted;
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            delete(file);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+            delete(dir);
+            return FileVisitResult.CONTINUE;
+        }
+
+        private void delete(Path path) throws IOException {
+            Files.deleteIfExists(path);
+            deleted++;
+            long ahead = deleted * 1000L / Math.max(rate, 1) - (System.nanoTime() - started) / 1000000L;
+            if (ahead > 0) {
+                try {
+                    Thread.sleep(ahead);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(TrashPurger.class.getName());
+}
@@ -0,0 +1,235 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Release artifacts of a node that its jobs used lately, laid out like a repository, so that deleting the repository of
+ * a job doesn't mean downloading them all again for its next build.
+ * <p>
+ * Before a repository is deleted, its release artifacts accessed within the window are moved to the pool, with their
+ * checksums, and the repository is seeded again with hard links to those same artifacts once it is gone, unless its
+ * job was deleted: a job gets back what it used, not what all the others did. The pool is on the same file system as
+ * the repositories, so moving and linking cost no copy. Repositories and the pool share the same files, so the access
+ * time of a pooled artifact tells whether any job used it; those no job used within the window are dropped from the
+ * pool by {@link Purge}.
+ * <p>
+ * Seeded artifacts have no {@code _remote.repositories} entry, which Maven takes as installed locally and uses as they
+ * are. Maven never writes into a release artifact, it replaces it, so a job can't change the copy of another. Snapshots
+ * are never pooled.
+ */
+final class WarmPool implements Serializable {
+
+    private final String pool;
+    private final long window;
+    private final Set<String> jobs;
+
+    /**
+     * @param pool where the node keeps the pool, on the same file system as the repositories.
+     * @param days how recently an artifact must have been accessed to be pooled, or to stay in the pool.
+     * @param jobs directory names of the jobs whose repositories are seeded again, not those of deleted jobs.
+     */
+    WarmPool(String pool, int days, Set<String> jobs) {
+        this.pool = pool;
+        this.window = TimeUnit.DAYS.toMillis(days);
+        this.jobs = jobs;
+    }
+
+    boolean seeds(String job) {
+        return job != null && jobs.contains(job);
+    }
+
+    /**
+     * Moves the release artifacts of a repository accessed within the window to the pool, unless already there.
+     *
+     * @return the paths of those artifacts relative to the repository, to seed it with once deleted.
+     */
+    List<String> save(File repository) throws IOException {
+        final Path repo = repository.toPath();
+        final Path poolDir = Paths.get(pool);
+        final long since = System.currentTimeMillis() - window;
+        final List<String> saved = new ArrayList<String>();
+        Files.walkFileTree(repo, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName().toString().endsWith("-SNAPSHOT")
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && attrs.lastAccessTime().toMillis() >= since && isArtifact(repo, file)) {
+                    String path = repo.relativize(file).toString();
+                    Path target = poolDir.resolve(path);
+                    if (move(file, target)) {
+                        move(file.resolveSibling(file.getFileName() + ".sha1"), target.resolveSibling(target.getFileName() + ".sha1"));
+                        move(file.resolveSibling(file.getFileName() + ".md5"), target.resolveSibling(target.getFileName() + ".md5"));
+                    }
+                    if (Files.exists(target)) {
+                        // pooled by another repository before, still used by this one
+                        saved.add(path);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOGGER.log(Level.FINE, "Failed to read " + file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return saved;
+    }
+
+    /**
+     * Links the artifacts {@link #save} returned for a repository that was just deleted back into it, with their
+     * checksums, leaving out those purged from the pool since.
+     *
+     * @return the number of artifacts linked.
+     */
+    int seed(File repository, List<String> artifacts) throws IOException {
+        Path poolDir = Paths.get(pool);
+        Path repo = repository.toPath();
+        int linked = 0;
+        for (String artifact : artifacts) {
+            Path file = poolDir.resolve(artifact);
+            Path target = repo.resolve(artifact);
+            if (link(file, target)) {
+                linked++;
+                link(file.resolveSibling(file.getFileName() + ".sha1"), target.resolveSibling(target.getFileName() + ".sha1"));
+                link(file.resolveSibling(file.getFileName() + ".md5"), target.resolveSibling(target.getFileName() + ".md5"));
+            }
+        }
+        return linked;
+    }
+
+    private static boolean link(Path file, Path target) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, file);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // a build got there first
+            return false;
+        } catch (NoSuchFileException e) {
+            // purged meanwhile
+            return false;
+        }
+    }
+
+    /**
+     * Whether a file is named after the artifactId and version of its directory, like the scanner of the cleanup
+     * tells artifacts apart. Checksums go along with their artifact.
+     */
+    private static boolean isArtifact(Path repo, Path file) {
+        String name = file.getFileName().toString();
+        if (file.getNameCount() - repo.getNameCount() < 4 || name.endsWith(".sha1") || name.endsWith(".md5")
+                || name.endsWith(".lastUpdated") || name.endsWith(".part") || name.endsWith(".tmp")) {
+            return false;
+        }
+        Path version = file.getParent();
+        String prefix = version.getParent().getFileName() + "-" + version.getFileName();
+        return name.startsWith(prefix) && name.length() > prefix.length()
+                && (name.charAt(prefix.length()) == '.' || name.charAt(prefix.length()) == '-');
+    }
+
+    private static boolean move(Path from, Path to) {
+        if (Files.exists(to)) {
+            return false;
+        }
+        try {
+            Files.createDirectories(to.getParent());
+            // not across file systems, the pool would be no faster than downloading again
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to move " + from + " to the warm pool", e);
+            return false;
+        }
+    }
+
+    /**
+     * Drops the artifacts no job accessed within the window from the pool of a node, returning how many.
+     */
+    static final class Purge implements FilePath.FileCallable<Integer> {
+        private final WarmPool pool;
+
+        Purge(WarmPool pool) {
+            this.pool = pool;
+        }
+
+        public Integer invoke(File f, VirtualChannel channel) throws IOException {
+            final Path poolDir = Paths.get(pool.pool);
+            if (!Files.isDirectory(poolDir)) {
+                return 0;
+            }
+            final long since = System.currentTimeMillis() - pool.window;
+            final int[] purged = new int[1];
+            Files.walkFileTree(poolDir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    String name = file.getFileName().toString();
+                    // checksums are hardly ever read, they go with their artifact
+                    if (!name.endsWith(".sha1") && !name.endsWith(".md5") && attrs.lastAccessTime().toMillis() < since
+                            && Files.deleteIfExists(file)) {
+                        purged[0]++;
+                        Files.deleteIfExists(file.resolveSibling(name + ".sha1"));
+                        Files.deleteIfExists(file.resolveSibling(name + ".md5"));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to read " + file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    if (!dir.equals(poolDir)) {
+                        try {
+                            Files.deleteIfExists(dir);
+                        } catch (DirectoryNotEmptyException ignored) {
+                            // still pooling something
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return purged[0];
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(WarmPool.class.getName());
+
+    private static final long serialVersionUID = 1L;
+}
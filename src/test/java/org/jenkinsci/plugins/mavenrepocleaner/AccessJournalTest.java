@@ -0,0 +1,179 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccessJournalTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long OLD = NOW - TimeUnit.DAYS.toMillis(30);
+    private static final long CUTOFF = NOW - TimeUnit.DAYS.toMillis(7);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() {
+        root = tmp.getRoot().toPath();
+    }
+
+    @Test
+    public void recordsTheVersionDirectories() throws IOException {
+        AccessJournal journal = new AccessJournal();
+        journal.record(root.resolve("org/apache/foo/1.0/foo-1.0.jar").toFile(), "org.apache", "foo");
+        journal.record(root.resolve("org/apache/foo/1.0/foo-1.0.pom").toFile(), "org.apache", "foo");
+        journal.record(root.resolve("com/bar/2.0/bar-2.0.jar").toFile(), "com", "bar");
+        journal.flush();
+
+        assertEquals(new HashSet<String>(Arrays.asList("/org/apache/foo/1.0/", "/com/bar/2.0/")),
+                AccessJournal.take(root));
+        assertFalse(Files.exists(root.resolve(AccessJournal.FILE_NAME)));
+        assertNull(AccessJournal.take(root));
+    }
+
+    @Test
+    public void ignoresFilesNotWhereTheirCoordinatesSay() throws IOException {
+        AccessJournal journal = new AccessJournal();
+        // the output of a module of the reactor
+        journal.record(root.resolve("workspace/foo/target/foo-1.0.jar").toFile(), "org.apache", "foo");
+        journal.record(root.resolve("com/apache/foo/1.0/foo-1.0.jar").toFile(), "org.apache", "foo");
+        journal.record(null, "org.apache", "foo");
+        journal.record(root.resolve("org/apache/foo/1.0/foo-1.0.jar").toFile(), null, "foo");
+        journal.flush();
+
+        assertNull(AccessJournal.read(root));
+    }
+
+    @Test
+    public void appendsAndReadLeavesTheJournal() throws IOException {
+        AccessJournal first = new AccessJournal();
+        first.record(root.resolve("org/a/1.0/a-1.0.jar").toFile(), "org", "a");
+        first.flush();
+        AccessJournal second = new AccessJournal();
+        second.record(root.resolve("org/b/1.0/b-1.0.jar").toFile(), "org", "b");
+        second.flush();
+
+        assertEquals(2, AccessJournal.read(root).size());
+        assertEquals(2, AccessJournal.take(root).size());
+    }
+
+    @Test
+    public void flushWritesAFilterInSharedRepositories() throws IOException {
+        Path refs = Files.createDirectories(root.resolve(SharedRepository.REFS));
+        AccessJournal journal = new AccessJournal();
+        journal.record(root.resolve("org/a/1.0/a-1.0.jar").toFile(), "org", "a");
+        journal.flush();
+
+        Collection<Path> filters = list(refs);
+        assertEquals(1, filters.size());
+        ReferenceFilter filter = ReferenceFilter.read(filters.iterator().next());
+        assertNotNull(filter);
+        assertTrue(filter.mightContain("/org/a/1.0/"));
+    }
+
+    @Test
+    public void cleanerKeepsWhatTheJournalRecorded() throws IOException {
+        Path a = artifact("org/a/1.0/a-1.0.jar", OLD);
+        Path pom = artifact("org/a/1.0/a-1.0.pom", OLD);
+        artifact("org/b/1.0/b-1.0.jar", OLD);
+        Path parent = artifact("org/p/1.0/p-1.0.pom", OLD);
+        AccessJournal journal = new AccessJournal();
+        journal.record(a.toFile(), "org", "a");
+        journal.flush();
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setAccessTracking(RepositoryCleaner.AccessTracking.JOURNAL);
+
+        Collection<String> removed = cleaner.clean(tmp.getRoot());
+
+        assertEquals(Collections.singletonList("/org/b/1.0/b-1.0.jar"), removed);
+        assertTrue(Files.exists(a));
+        assertTrue(Files.exists(pom));
+        // Maven doesn't report all the POMs it reads
+        assertTrue(Files.exists(parent));
+        assertFalse(Files.exists(root.resolve(AccessJournal.FILE_NAME)));
+    }
+
+    @Test
+    public void cleanerWithoutJournalGoesByAccessTime() throws IOException {
+        artifact("org/p/1.0/p-1.0.pom", OLD);
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setAccessTracking(RepositoryCleaner.AccessTracking.JOURNAL);
+
+        assertEquals(Collections.singletonList("/org/p/1.0/p-1.0.pom"), cleaner.clean(tmp.getRoot()));
+    }
+
+    @Test
+    public void dryRunLeavesTheJournal() throws IOException {
+        Path a = artifact("org/a/1.0/a-1.0.jar", OLD);
+        artifact("org/b/1.0/b-1.0.jar", OLD);
+        AccessJournal journal = new AccessJournal();
+        journal.record(a.toFile(), "org", "a");
+        journal.flush();
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setAccessTracking(RepositoryCleaner.AccessTracking.JOURNAL);
+        cleaner.setDryRun(true);
+
+        assertEquals(Collections.singletonList("/org/b/1.0/b-1.0.jar"), cleaner.clean(tmp.getRoot()));
+        assertTrue(Files.exists(root.resolve(AccessJournal.FILE_NAME)));
+    }
+
+    @Test
+    public void relatimeRearmsTheAccessTimeOfWhatIsKept() throws IOException {
+        Path a = artifact("org/a/1.0/a-1.0.jar", OLD);
+        FileTime accessed = FileTime.fromMillis(NOW - TimeUnit.DAYS.toMillis(1));
+        Files.getFileAttributeView(a, BasicFileAttributeView.class).setTimes(null, accessed, null);
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setAccessTracking(RepositoryCleaner.AccessTracking.RELATIME);
+
+        assertTrue(cleaner.clean(tmp.getRoot()).isEmpty());
+
+        BasicFileAttributes attrs = Files.readAttributes(a, BasicFileAttributes.class);
+        assertEquals(attrs.lastModifiedTime(), attrs.lastAccessTime());
+    }
+
+    private Path artifact(String path, long time) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+        FileTime t = FileTime.fromMillis(time);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(t, t, null);
+        return file;
+    }
+
+    private static Collection<Path> list(Path dir) throws IOException {
+        Collection<Path> entries = new ArrayList<Path>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+        try {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        } finally {
+            stream.close();
+        }
+        return entries;
+    }
+}
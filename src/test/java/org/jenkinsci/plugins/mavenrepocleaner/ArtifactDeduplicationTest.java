@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArtifactDeduplicationTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String JAR = "org/a/1.0/a-1.0.jar";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File jobs;
+    private Path store;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        jobs = tmp.newFolder("jobs");
+        store = tmp.getRoot().toPath().resolve("store");
+        content = new byte[8192];
+        new Random(42).nextBytes(content);
+    }
+
+    @Test
+    public void linksIdenticalDownloads() throws Exception {
+        Path first = artifact("job1", JAR, content, "central");
+        Path second = artifact("job2", JAR, content, "central");
+
+        ArtifactDeduplication.Report report = deduplicate();
+
+        assertEquals(1, report.linked);
+        assertEquals(content.length, report.saved);
+        assertEquals(key(first), key(second));
+        assertTrue(Arrays.equals(content, Files.readAllBytes(second)));
+        assertFalse(Files.exists(second.resolveSibling("a-1.0.jar.dedup")));
+
+        assertEquals(0, deduplicate().linked);
+    }
+
+    @Test
+    public void leavesDifferentContentAlone() throws Exception {
+        Path first = artifact("job1", JAR, content, "central");
+        byte[] other = content.clone();
+        other[other.length - 1]++;
+        Path second = artifact("job2", JAR, other, "central");
+        // a stale checksum pointing at the content of the other job
+        Files.write(second.resolveSibling("a-1.0.jar.sha1"), sha1(content).getBytes(UTF8));
+
+        assertEquals(0, deduplicate().linked);
+
+        assertFalse(key(first).equals(key(second)));
+        assertTrue(Arrays.equals(other, Files.readAllBytes(second)));
+    }
+
+    @Test
+    public void leavesLocalSnapshotAndSmallArtifactsAlone() throws Exception {
+        artifact("job1", JAR, content, "");
+        artifact("job2", JAR, content, "");
+        artifact("job1", "org/b/1.0-SNAPSHOT/b-1.0-SNAPSHOT.jar", content, "central");
+        artifact("job2", "org/b/1.0-SNAPSHOT/b-1.0-SNAPSHOT.jar", content, "central");
+        byte[] small = Arrays.copyOf(content, 100);
+        artifact("job1", "org/c/1.0/c-1.0.jar", small, "central");
+        artifact("job2", "org/c/1.0/c-1.0.jar", small, "central");
+
+        assertEquals(0, deduplicate().linked);
+    }
+
+    @Test
+    public void purgesWhatNoRepositoryLinksTo() throws Exception {
+        Path first = artifact("job1", JAR, content, "central");
+        Path second = artifact("job2", JAR, content, "central");
+        deduplicate();
+        Path entry = store.resolve(sha1(content).substring(0, 2)).resolve(sha1(content));
+        assertTrue(Files.exists(entry));
+
+        Files.delete(first);
+        Files.delete(second);
+        ArtifactDeduplication.Report report = deduplicate();
+
+        assertEquals(1, report.purged);
+        assertFalse(Files.exists(entry));
+    }
+
+    private ArtifactDeduplication.Report deduplicate() throws Exception {
+        return new ArtifactDeduplication(".repository", store.toString()).invoke(jobs, null);
+    }
+
+    /**
+     * An artifact of the repository of a job, with its checksum, downloaded from a repository unless that is empty.
+     */
+    private Path artifact(String job, String path, byte[] bytes, String repository) throws Exception {
+        Path file = jobs.toPath().resolve(job).resolve(".repository").resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, bytes);
+        String name = file.getFileName().toString();
+        Files.write(file.resolveSibling(name + ".sha1"), sha1(bytes).getBytes(UTF8));
+        Path remote = file.resolveSibling("_remote.repositories");
+        String line = name + ">" + repository + "=\n";
+        Files.write(remote, line.getBytes(UTF8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        return file;
+    }
+
+    private static Object key(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    private static String sha1(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChecksumVerifierTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final long NOW = System.currentTimeMillis();
+    private static final long RECENT = NOW - TimeUnit.DAYS.toMillis(1);
+    private static final long CUTOFF = NOW - TimeUnit.DAYS.toMillis(7);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() {
+        root = tmp.getRoot().toPath();
+    }
+
+    @Test
+    public void removesWhatDoesNotMatchItsChecksum() throws Exception {
+        Path good = artifact("org/a/1.0/a-1.0.jar", "good");
+        checksum(good, "SHA-1", "good", "");
+        Path corrupt = artifact("org/a/1.0/a-1.0.pom", "truncat");
+        checksum(corrupt, "SHA-1", "truncated", "");
+        checksum(corrupt, "MD5", "truncated", "");
+
+        CleanupMetrics metrics = verify();
+
+        assertEquals(2, metrics.getFilesVerified());
+        assertEquals(1, metrics.getCorruptRemoved());
+        assertTrue(Files.exists(good));
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.jar.sha1")));
+        assertFalse(Files.exists(corrupt));
+        assertFalse(Files.exists(root.resolve("org/a/1.0/a-1.0.pom.sha1")));
+        assertFalse(Files.exists(root.resolve("org/a/1.0/a-1.0.pom.md5")));
+    }
+
+    @Test
+    public void fallsBackToMd5() throws Exception {
+        Path corrupt = artifact("org/a/1.0/a-1.0.jar", "truncat");
+        checksum(corrupt, "MD5", "truncated", "  a-1.0.jar");
+
+        assertEquals(1, verify().getCorruptRemoved());
+        assertFalse(Files.exists(corrupt));
+    }
+
+    @Test
+    public void leavesAloneWhatItCannotTell() throws Exception {
+        Path unchecked = artifact("org/a/1.0/a-1.0.jar", "anything");
+        Path garbled = artifact("org/a/1.0/a-1.0.pom", "anything");
+        Files.write(root.resolve("org/a/1.0/a-1.0.pom.sha1"), "<html>not found</html>".getBytes(UTF8));
+
+        CleanupMetrics metrics = verify();
+
+        assertEquals(0, metrics.getFilesVerified());
+        assertTrue(Files.exists(unchecked));
+        assertTrue(Files.exists(garbled));
+    }
+
+    @Test
+    public void keepsTheAccessTime() throws Exception {
+        Path good = artifact("org/a/1.0/a-1.0.jar", "good");
+        checksum(good, "SHA-1", "good", "");
+
+        verify();
+
+        assertEquals(RECENT, Files.readAttributes(good, BasicFileAttributes.class)
+                .lastAccessTime().toMillis());
+    }
+
+    @Test
+    public void removesOldPartialDownloads() throws Exception {
+        Path old = artifact("org/a/1.0/a-1.0.jar.lastUpdated", "");
+        Path part = artifact("org/a/1.0/a-1.0.pom.part", "");
+        Path downloading = Files.createFile(root.resolve("org/a/1.0/a-1.0.jar.tmp"));
+
+        CleanupMetrics metrics = verify();
+
+        assertEquals(2, metrics.getPartialRemoved());
+        assertFalse(Files.exists(old));
+        assertFalse(Files.exists(part));
+        assertTrue(Files.exists(downloading));
+    }
+
+    @Test
+    public void forgetsTheRemoteEntriesOfMissingFiles() throws Exception {
+        artifact("org/a/1.0/a-1.0.jar", "good");
+        Path remote = root.resolve("org/a/1.0/_remote.repositories");
+        Files.write(remote, Arrays.asList("#NOTE: This is an internal implementation file", "a-1.0.jar>central=",
+                "a-1.0.pom>central=", "a-1.0-sources.jar>central="), UTF8);
+
+        CleanupMetrics metrics = verify();
+
+        assertEquals(2, metrics.getOrphanedEntries());
+        assertEquals(Arrays.asList("#NOTE: This is an internal implementation file", "a-1.0.jar>central="),
+                Files.readAllLines(remote, UTF8));
+    }
+
+    @Test
+    public void dryRunOnlyPlans() throws Exception {
+        Path corrupt = artifact("org/a/1.0/a-1.0.jar", "truncat");
+        checksum(corrupt, "SHA-1", "truncated", "");
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setVerifyChecksums(true);
+        cleaner.setDryRun(true);
+
+        Collection<String> removed = cleaner.clean(tmp.getRoot());
+
+        assertEquals(Collections.singletonList("/org/a/1.0/a-1.0.jar"), removed);
+        assertTrue(Files.exists(corrupt));
+        assertEquals(1, cleaner.getPlan().getArtifacts());
+    }
+
+    @Test
+    public void incrementalSweepsSkipVerifiedArtifacts() throws Exception {
+        Path good = artifact("org/a/1.0/a-1.0.jar", "good");
+        checksum(good, "SHA-1", "good", "");
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setVerifyChecksums(true);
+        cleaner.setIncremental(true);
+        cleaner.clean(tmp.getRoot());
+        assertEquals(1, cleaner.getMetrics().getFilesVerified());
+
+        cleaner.clean(tmp.getRoot());
+
+        assertEquals(0, cleaner.getMetrics().getFilesVerified());
+        assertTrue(Files.exists(good));
+    }
+
+    private CleanupMetrics verify() throws IOException {
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setVerifyChecksums(true);
+        cleaner.clean(tmp.getRoot());
+        return cleaner.getMetrics();
+    }
+
+    /**
+     * A file accessed a day ago and modified long before, so that the sweep keeps it but it is old enough to be a
+     * leftover when it is a partial download.
+     */
+    private Path artifact(String path, String content) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(UTF8));
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(
+                FileTime.fromMillis(NOW - TimeUnit.DAYS.toMillis(2)), FileTime.fromMillis(RECENT), null);
+        return file;
+    }
+
+    private static void checksum(Path file, String algorithm, String content, String suffix) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance(algorithm).digest(content.getBytes(UTF8))) {
+            hex.append(String.format("%02x", b));
+        }
+        String extension = algorithm.equals("MD5") ? ".md5" : ".sha1";
+        Files.write(file.resolveSibling(file.getFileName() + extension), (hex + suffix).getBytes(UTF8));
+    }
+}
@@ -0,0 +1,191 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CleanupPlanTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final long NOW = System.currentTimeMillis();
+    private static final long OLD = NOW - TimeUnit.DAYS.toMillis(30);
+    private static final long CUTOFF = NOW - TimeUnit.DAYS.toMillis(7);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = tmp.newFolder("repository").toPath();
+    }
+
+    @Test
+    public void appliesWhatTheDryRunFound() throws IOException {
+        file("org/a/1.0/a-1.0.jar", OLD);
+        file("org/a/1.0/a-1.0.jar.sha1", OLD);
+        file("org/b/1.0/b-1.0.jar", NOW);
+
+        CleanupPlan plan = plan();
+
+        assertEquals(1, plan.getArtifacts());
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.jar")));
+
+        CleanupMetrics metrics = plan.apply(root.toFile());
+
+        assertEquals(1, metrics.getFilesRemoved());
+        assertFalse(Files.exists(root.resolve("org/a")));
+        assertTrue(Files.exists(root.resolve("org/b/1.0/b-1.0.jar")));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        file("org/a/1.0/a-1.0.jar", OLD);
+        file("org/a/1.0/a-1.0.pom", OLD);
+        CleanupPlan plan = plan();
+        File saved = tmp.newFile("plan");
+
+        plan.write(saved);
+        CleanupPlan read = CleanupPlan.read(saved);
+
+        assertEquals(plan.getCreated(), read.getCreated());
+        assertEquals(2, read.getArtifacts());
+        assertEquals(plan.getBytes(), read.getBytes());
+        assertEquals(plan.getDirectories(), read.getDirectories());
+        read.apply(root.toFile());
+        assertFalse(Files.exists(root.resolve("org")));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsOtherFiles() throws IOException {
+        CleanupPlan.read(write("<html>\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsUnknownKeywords() throws IOException {
+        CleanupPlan.read(write("created 1\ndelete org/a\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsBadNumbers() throws IOException {
+        CleanupPlan.read(write("created yesterday\n"));
+    }
+
+    @Test
+    public void keepsArtifactsAccessedSinceWithTheirDirectory() throws IOException {
+        file("org/a/1.0/a-1.0.jar", OLD);
+        file("org/a/1.0/a-1.0.jar.sha1", OLD);
+        file("org/a/1.0/a-1.0.pom", OLD);
+        file("org/b/1.0/b-1.0.jar", OLD);
+        CleanupPlan plan = plan();
+        setTimes(root.resolve("org/a/1.0/a-1.0.pom"), plan.getCreated() + 1000);
+
+        CleanupMetrics metrics = plan.apply(root.toFile());
+
+        assertEquals(1, metrics.getSkipped(CleanupMetrics.SkipReason.RECENTLY_ACCESSED));
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.pom")));
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.jar.sha1")));
+        assertFalse(Files.exists(root.resolve("org/b")));
+    }
+
+    @Test
+    public void ignoresPathsOutOfTheRepository() throws IOException {
+        Path victim = tmp.newFile("victim").toPath();
+        Path outside = tmp.newFolder("outside").toPath();
+
+        plan("file ../victim", "file org/../../victim", "artifact ../victim", "directory ../outside")
+                .apply(root.toFile());
+
+        assertTrue(Files.exists(victim));
+        assertTrue(Files.exists(outside));
+        assertTrue(Files.isDirectory(root));
+    }
+
+    @Test
+    public void refusesSymbolicLinks() throws IOException {
+        Path outside = tmp.newFolder("outside").toPath();
+        Files.createDirectories(outside.resolve("sub/1.0"));
+        Path victim = Files.createFile(outside.resolve("sub/1.0/victim.jar"));
+        setTimes(victim, OLD);
+        Files.createDirectories(root.resolve("org"));
+        Files.createSymbolicLink(root.resolve("org/a"), outside);
+
+        plan("artifact org/a/sub/1.0/victim.jar", "file org/a/sub/1.0/victim.jar", "directory org/a/sub/1.0",
+                "directory org/a/sub").apply(root.toFile());
+
+        assertTrue(Files.exists(victim));
+    }
+
+    @Test
+    public void rewritesTheMetadataOfPrunedSnapshots() throws IOException {
+        Path dir = Files.createDirectories(root.resolve("org/a/1.0-SNAPSHOT"));
+        Path metadata = dir.resolve("maven-metadata-central.xml");
+        Files.write(metadata, ("<metadata>\n  <versioning>\n    <snapshotVersions>\n"
+                + "      <snapshotVersion>\n        <extension>jar</extension>\n"
+                + "        <value>1.0-20120601.101500-1</value>\n      </snapshotVersion>\n"
+                + "      <snapshotVersion>\n        <extension>jar</extension>\n"
+                + "        <value>1.0-20120602.101500-2</value>\n      </snapshotVersion>\n"
+                + "    </snapshotVersions>\n  </versioning>\n</metadata>\n").getBytes(UTF8));
+
+        plan("pruned org/a/1.0-SNAPSHOT", "build a-1.0-20120601.101500-1.jar").apply(root.toFile());
+
+        String content = new String(Files.readAllBytes(metadata), UTF8);
+        assertFalse(content.contains("1.0-20120601.101500-1"));
+        assertTrue(content.contains("1.0-20120602.101500-2"));
+    }
+
+    /**
+     * What a dry run of the repository would remove.
+     */
+    private CleanupPlan plan() throws IOException {
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setDryRun(true);
+        assertTrue(cleaner.clean(root.toFile()).size() > 0);
+        return cleaner.getPlan();
+    }
+
+    /**
+     * A plan read from lines, made after anything the tests create was last accessed.
+     */
+    private CleanupPlan plan(String... lines) throws IOException {
+        StringBuilder content = new StringBuilder("created ").append(NOW + TimeUnit.HOURS.toMillis(1)).append('\n');
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        return CleanupPlan.read(write(content.toString()));
+    }
+
+    private File write(String content) throws IOException {
+        File file = new File(tmp.getRoot(), "plan");
+        Files.write(file.toPath(), content.getBytes(UTF8));
+        return file;
+    }
+
+    private Path file(String path, long accessed) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, path.getBytes(UTF8));
+        setTimes(file, accessed);
+        return file;
+    }
+
+    private static void setTimes(Path file, long time) throws IOException {
+        FileTime t = FileTime.fromMillis(time);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(t, t, null);
+    }
+}
@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CleanupPolicyTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void coversEverythingByDefault() {
+        CleanupPolicy policy = new CleanupPolicy(0, 0, null, "", false, 0);
+
+        assertFalse(policy.isSelective());
+        assertTrue(policy.covers("/org/apache/foo/1.0/"));
+    }
+
+    @Test
+    public void includes() {
+        CleanupPolicy policy = new CleanupPolicy(0, 0, "com.acme *.example", null, false, 0);
+
+        assertTrue(policy.isSelective());
+        assertTrue(policy.covers("/com/acme/foo/1.0/"));
+        assertTrue(policy.covers("/net/example/foo/1.0/"));
+        assertFalse(policy.covers("/org/apache/foo/1.0/"));
+    }
+
+    @Test
+    public void excludesWinOverIncludes() {
+        CleanupPolicy policy = new CleanupPolicy(0, 0, "com.acme", "com.acme.*.release", false, 0);
+
+        assertTrue(policy.isSelective());
+        assertTrue(policy.covers("/com/acme/foo/1.0/"));
+        assertFalse(policy.covers("/com/acme/tools/release/foo/1.0/"));
+    }
+
+    @Test
+    public void keepReleases() {
+        CleanupPolicy policy = new CleanupPolicy(0, 0, null, null, true, 0);
+
+        assertTrue(policy.isSelective());
+        assertTrue(policy.covers("/org/apache/foo/1.0-SNAPSHOT/"));
+        assertFalse(policy.covers("/org/apache/foo/1.0/"));
+    }
+
+    @Test
+    public void snapshotRetentionIsSelective() {
+        assertTrue(new CleanupPolicy(0, 0, null, null, false, 2).isSelective());
+    }
+
+    @Test
+    public void cleanerSparesWhatThePolicyDoesNotCover() throws IOException {
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+        Path root = tmp.getRoot().toPath();
+        artifact(root, "com/acme/foo/1.0/foo-1.0.jar", old);
+        artifact(root, "com/acme/foo/1.0-SNAPSHOT/foo-1.0-SNAPSHOT.jar", old);
+        artifact(root, "org/apache/bar/1.0-SNAPSHOT/bar-1.0-SNAPSHOT.jar", old);
+        RepositoryCleaner cleaner = new RepositoryCleaner(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7));
+        cleaner.setPolicy(new CleanupPolicy(0, 0, "com.acme", null, true, 0));
+
+        Collection<String> removed = cleaner.clean(tmp.getRoot());
+
+        assertEquals(Collections.singletonList("/com/acme/foo/1.0-SNAPSHOT/foo-1.0-SNAPSHOT.jar"), removed);
+        assertTrue(Files.exists(root.resolve("com/acme/foo/1.0/foo-1.0.jar")));
+        assertTrue(Files.exists(root.resolve("org/apache/bar/1.0-SNAPSHOT/bar-1.0-SNAPSHOT.jar")));
+    }
+
+    private static void artifact(Path root, String path, long accessed) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+        FileTime time = FileTime.fromMillis(accessed);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(time, time, null);
+    }
+}
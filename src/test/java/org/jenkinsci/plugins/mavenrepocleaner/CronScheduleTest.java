@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import antlr.ANTLRException;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+public class CronScheduleTest {
+
+    @Test
+    public void nextIsTheFirstFiringAtOrAfter() throws ANTLRException {
+        CronSchedule schedule = new CronSchedule("0 3 * * *");
+
+        assertEquals(time(2012, 6, 1, 3, 0), schedule.next(time(2012, 6, 1, 2, 59) + 30 * 1000));
+        assertEquals(time(2012, 6, 1, 3, 0), schedule.next(time(2012, 6, 1, 3, 0)));
+        assertEquals(time(2012, 6, 2, 3, 0), schedule.next(time(2012, 6, 1, 3, 1)));
+    }
+
+    @Test
+    public void nextIsTheEarliestOfAllLines() throws ANTLRException {
+        CronSchedule schedule = new CronSchedule("# nightly\n0 3 * * *\n\n30 1 * * 0\n");
+
+        // 2012-06-03 is a Sunday
+        assertEquals(time(2012, 6, 2, 3, 0), schedule.next(time(2012, 6, 2, 0, 0)));
+        assertEquals(time(2012, 6, 3, 1, 30), schedule.next(time(2012, 6, 3, 0, 0)));
+        assertTrue(schedule.getNeverFiring().isEmpty());
+    }
+
+    @Test
+    public void neverFiring() throws ANTLRException {
+        CronSchedule schedule = new CronSchedule("0 0 31 2 *");
+
+        assertEquals(Collections.singletonList("0 0 31 2 *"), schedule.getNeverFiring());
+        assertEquals(-1, schedule.next(time(2012, 6, 1, 0, 0)));
+    }
+
+    @Test
+    public void neverFiringLinesAreLeftOut() throws ANTLRException {
+        CronSchedule schedule = new CronSchedule("0 0 31 2 *\n0 4 * * *");
+
+        assertEquals(Collections.singletonList("0 0 31 2 *"), schedule.getNeverFiring());
+        assertEquals(time(2012, 6, 1, 4, 0), schedule.next(time(2012, 6, 1, 0, 0)));
+    }
+
+    @Test
+    public void rareDatesStillFire() throws ANTLRException {
+        // February 29th on a Monday, 2016 is the next one
+        CronSchedule schedule = new CronSchedule("0 0 29 2 1");
+
+        assertTrue(schedule.getNeverFiring().isEmpty());
+        assertEquals(time(2016, 2, 29, 0, 0), schedule.next(time(2012, 6, 1, 0, 0)));
+    }
+
+    @Test
+    public void minute() {
+        long time = time(2012, 6, 1, 3, 0);
+
+        assertEquals(time, CronSchedule.minute(time));
+        assertEquals(time, CronSchedule.minute(time + CronSchedule.MINUTE - 1));
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute) {
+        return new GregorianCalendar(year, month - 1, day, hour, minute).getTimeInMillis();
+    }
+}
@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EvictionQueueTest {
+
+    private static final long NOW = System.currentTimeMillis();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void keepsTheLeastRecentlyAccessed() {
+        EvictionQueue queue = new EvictionQueue(2);
+        queue.offer(Paths.get("b"), 10, 2);
+        queue.offer(Paths.get("c"), 10, 3);
+        assertFalse(queue.isOverflowed());
+        queue.offer(Paths.get("a"), 10, 1);
+        queue.offer(Paths.get("d"), 10, 4);
+
+        assertTrue(queue.isOverflowed());
+        assertEquals(40, queue.getTotal());
+        List<EvictionQueue.Candidate> candidates = queue.oldestFirst();
+        assertEquals(2, candidates.size());
+        assertEquals(Paths.get("a"), candidates.get(0).file);
+        assertEquals(Paths.get("b"), candidates.get(1).file);
+    }
+
+    @Test
+    public void totalCountsSparedAndForgotten() {
+        EvictionQueue queue = new EvictionQueue(10);
+        queue.offer(Paths.get("a"), 10, 1);
+        queue.spare(5);
+        queue.forget(10);
+
+        assertEquals(5, queue.getTotal());
+        assertEquals(1, queue.oldestFirst().size());
+    }
+
+    @Test
+    public void cleanerEvictsTheOldestUntilWithinBudget() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        artifact(root, "org/a/1.0/a-1.0.jar", NOW - TimeUnit.DAYS.toMillis(3));
+        Files.createFile(root.resolve("org/a/1.0/a-1.0.jar.sha1"));
+        artifact(root, "org/b/1.0/b-1.0.jar", NOW - TimeUnit.DAYS.toMillis(2));
+        artifact(root, "org/c/1.0/c-1.0.jar", NOW - TimeUnit.DAYS.toMillis(1));
+        // nothing is old enough to go by age alone
+        RepositoryCleaner cleaner = new RepositoryCleaner(NOW - TimeUnit.DAYS.toMillis(30));
+        cleaner.setSizeBudget(150);
+
+        Collection<String> removed = cleaner.clean(tmp.getRoot());
+
+        assertEquals(Arrays.asList("/org/a/1.0/a-1.0.jar", "/org/b/1.0/b-1.0.jar"), removed);
+        assertFalse(Files.exists(root.resolve("org/a/1.0/a-1.0.jar.sha1")));
+        assertTrue(Files.exists(root.resolve("org/c/1.0/c-1.0.jar")));
+    }
+
+    @Test
+    public void cleanerCountsButKeepsWhatThePolicySpares() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        artifact(root, "org/a/1.0/a-1.0.jar", NOW - TimeUnit.DAYS.toMillis(3));
+        artifact(root, "com/b/1.0/b-1.0.jar", NOW - TimeUnit.DAYS.toMillis(2));
+        artifact(root, "com/c/1.0/c-1.0.jar", NOW - TimeUnit.DAYS.toMillis(1));
+        RepositoryCleaner cleaner = new RepositoryCleaner(NOW - TimeUnit.DAYS.toMillis(30));
+        cleaner.setSizeBudget(250);
+        cleaner.setPolicy(new CleanupPolicy(0, 0, "com", null, false, 0));
+
+        Collection<String> removed = cleaner.clean(tmp.getRoot());
+
+        assertEquals(Arrays.asList("/com/b/1.0/b-1.0.jar"), removed);
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    @Test
+    public void cleanerWithinBudgetRemovesNothing() throws IOException {
+        Path root = tmp.getRoot().toPath();
+        artifact(root, "org/a/1.0/a-1.0.jar", NOW - TimeUnit.DAYS.toMillis(60));
+        RepositoryCleaner cleaner = new RepositoryCleaner(NOW - TimeUnit.DAYS.toMillis(30));
+        cleaner.setSizeBudget(100);
+
+        assertTrue(cleaner.clean(tmp.getRoot()).isEmpty());
+    }
+
+    /**
+     * An artifact of 100 bytes.
+     */
+    private static void artifact(Path root, String path, long accessed) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[100]);
+        FileTime time = FileTime.fromMillis(accessed);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(time, time, null);
+    }
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GroupIdTrieTest {
+
+    @Test
+    public void matchesLeadingSegments() {
+        GroupIdTrie trie = new GroupIdTrie("org.apache");
+
+        assertTrue(trie.matches("/org/apache/foo/1.0/"));
+        assertTrue(trie.matches("/org/apache/maven/foo/1.0/"));
+        assertFalse(trie.matches("/org/apachex/foo/1.0/"));
+        assertFalse(trie.matches("/org/foo/1.0/"));
+        assertFalse(trie.matches("/com/apache/foo/1.0/"));
+    }
+
+    @Test
+    public void neverMatchesTheArtifactIdOrVersion() {
+        GroupIdTrie trie = new GroupIdTrie("org.apache");
+
+        // org is the groupId, apache the artifactId
+        assertFalse(trie.matches("/org/apache/1.0/"));
+    }
+
+    @Test
+    public void wildcardMatchesOneSegment() {
+        GroupIdTrie trie = new GroupIdTrie("com.*.internal");
+
+        assertTrue(trie.matches("/com/acme/internal/foo/1.0/"));
+        assertTrue(trie.matches("/com/acme/internal/tools/foo/1.0/"));
+        assertFalse(trie.matches("/com/acme/tools/internal/foo/1.0/"));
+        assertFalse(trie.matches("/com/internal/foo/1.0/"));
+    }
+
+    @Test
+    public void wildcardBacktracks() {
+        GroupIdTrie trie = new GroupIdTrie("org.acme.foo *.acme.bar");
+
+        assertTrue(trie.matches("/org/acme/bar/x/1.0/"));
+        assertTrue(trie.matches("/org/acme/foo/x/1.0/"));
+        assertFalse(trie.matches("/org/acme/baz/x/1.0/"));
+    }
+
+    @Test
+    public void severalPatterns() {
+        GroupIdTrie trie = new GroupIdTrie(" org.apache,\ncom.acme  net.example ");
+
+        assertFalse(trie.isEmpty());
+        assertTrue(trie.matches("/org/apache/foo/1.0/"));
+        assertTrue(trie.matches("/com/acme/foo/1.0/"));
+        assertTrue(trie.matches("/net/example/foo/1.0/"));
+        assertFalse(trie.matches("/net/foo/1.0/"));
+    }
+
+    @Test
+    public void empty() {
+        assertTrue(new GroupIdTrie(null).isEmpty());
+        assertTrue(new GroupIdTrie(" , ").isEmpty());
+        assertFalse(new GroupIdTrie("").matches("/org/apache/foo/1.0/"));
+    }
+}
@@ -0,0 +1,145 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NodeSweepTest {
+
+    private static final long OLD = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File jobs;
+    private final Map<String, NodeSweep.Disposition> dispositions = new HashMap<String, NodeSweep.Disposition>();
+    private final Map<String, CleanupPolicy> policies = new HashMap<String, CleanupPolicy>();
+
+    @Before
+    public void setUp() throws IOException {
+        jobs = tmp.newFolder("jobs");
+    }
+
+    @Test
+    public void deletesTheRepositoriesOfUnknownJobs() throws Exception {
+        File repo = repository("unknown");
+
+        SweepReport report = sweep(0, true);
+
+        assertEquals(1, report.getEntries(SweepReport.Outcome.DELETED).size());
+        assertFalse(repo.exists());
+    }
+
+    @Test
+    public void leavesTheDeletionToTheMasterUnlessDeleting() throws Exception {
+        File repo = repository("unknown");
+
+        SweepReport report = sweep(0, false);
+
+        assertEquals(1, report.getEntries(SweepReport.Outcome.EXPIRED).size());
+        assertTrue(repo.isDirectory());
+    }
+
+    @Test
+    public void keepsAndDeletesAsTheJobSays() throws Exception {
+        File kept = repository("kept", NodeSweep.Disposition.KEEP);
+        File deleted = repository("deleted", NodeSweep.Disposition.DELETE);
+
+        SweepReport report = sweep(0, true);
+
+        assertEquals(1, report.getEntries(SweepReport.Outcome.KEPT).size());
+        assertTrue(new File(kept, ".cleanupMarker").exists());
+        assertFalse(deleted.exists());
+    }
+
+    @Test
+    public void expiresByMarker() throws Exception {
+        File fresh = repository("fresh", NodeSweep.Disposition.EXPIRE);
+        File expired = repository("expired", NodeSweep.Disposition.EXPIRE);
+        marker(expired, OLD);
+
+        SweepReport report = sweep(0, true);
+
+        assertEquals(1, report.getEntries(SweepReport.Outcome.KEPT).size());
+        // a new marker counts from now on
+        assertTrue(fresh.isDirectory());
+        assertFalse(expired.exists());
+    }
+
+    @Test
+    public void expiresByModificationTime() throws Exception {
+        File fresh = repository("fresh", NodeSweep.Disposition.EXPIRE);
+        marker(fresh, OLD);
+        File expired = repository("expired", NodeSweep.Disposition.EXPIRE);
+        // creating the marker would touch the directory
+        marker(expired, System.currentTimeMillis());
+        assertTrue(expired.setLastModified(OLD));
+
+        sweep(1, true);
+
+        assertTrue(fresh.isDirectory());
+        assertFalse(expired.exists());
+    }
+
+    @Test
+    public void trimsInsteadOfDeleting() throws Exception {
+        File budget = repository("budget", NodeSweep.Disposition.EXPIRE);
+        policies.put("budget", new CleanupPolicy(0, 100, null, null, false, 0));
+        File selective = repository("selective", NodeSweep.Disposition.EXPIRE);
+        marker(selective, OLD);
+        policies.put("selective", new CleanupPolicy(0, 0, "com.acme", null, false, 0));
+
+        SweepReport report = sweep(0, true);
+
+        assertEquals(2, report.getEntries(SweepReport.Outcome.TRIM).size());
+        assertTrue(budget.isDirectory());
+        assertTrue(selective.isDirectory());
+        assertEquals(2, sweep(3, true).getEntries(SweepReport.Outcome.TRIM).size());
+    }
+
+    @Test
+    public void policyMaxAgeOverridesTheExpirationDays() throws Exception {
+        File repo = repository("short", NodeSweep.Disposition.EXPIRE);
+        marker(repo, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2));
+        policies.put("short", new CleanupPolicy(1, 0, null, null, false, 0));
+
+        sweep(0, true);
+
+        assertFalse(repo.exists());
+    }
+
+    private SweepReport sweep(int expirationStyle, boolean deleting) throws Exception {
+        RepositoryDeleter deleter = new RepositoryDeleter(0, IoThrottle.of(10000, false, 0));
+        return new NodeSweep(".repository", dispositions, policies, 7, expirationStyle, deleter, deleting)
+                .invoke(jobs, null);
+    }
+
+    private File repository(String job, NodeSweep.Disposition disposition) throws IOException {
+        dispositions.put(job, disposition);
+        return repository(job);
+    }
+
+    private File repository(String job) throws IOException {
+        File repo = new File(jobs, job + "/.repository");
+        assertTrue(new File(repo, "org/a/1.0").mkdirs());
+        assertTrue(new File(repo, "org/a/1.0/a-1.0.jar").createNewFile());
+        return repo;
+    }
+
+    private static void marker(File repo, long lastModified) throws IOException {
+        File marker = new File(repo, ".cleanupMarker");
+        marker.createNewFile();
+        assertTrue(marker.setLastModified(lastModified));
+    }
+}
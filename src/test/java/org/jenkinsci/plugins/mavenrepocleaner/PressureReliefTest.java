@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PressureReliefTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File jobs;
+    private final Map<String, NodeSweep.Disposition> dispositions = new HashMap<String, NodeSweep.Disposition>();
+
+    @Before
+    public void setUp() throws IOException {
+        jobs = tmp.newFolder("jobs");
+        repository("kept", 1000);
+        dispositions.put("kept", NodeSweep.Disposition.KEEP);
+        repository("recent", 3000);
+        dispositions.put("recent", NodeSweep.Disposition.EXPIRE);
+        repository("old", 2000);
+        dispositions.put("old", NodeSweep.Disposition.DELETE);
+        repository("unknown", 4000);
+        new File(jobs, "without-repository").mkdir();
+    }
+
+    @Test
+    public void listsUnknownJobsFirstThenTheOldest() throws Exception {
+        SweepReport report = new PressureRelief(".repository", dispositions, 50, false).invoke(jobs, null);
+
+        assertEquals(report.getEntries(), report.getEntries(SweepReport.Outcome.EXPIRED));
+        List<String> order = new ArrayList<String>();
+        for (SweepReport.Entry entry : report.getEntries()) {
+            order.add(entry.job);
+        }
+        assertEquals(Arrays.asList("unknown", "old", "recent"), order);
+        // the master deletes them one at a time
+        assertTrue(new File(jobs, "unknown/.repository").isDirectory());
+    }
+
+    @Test
+    public void dryRunPlansUntilTheLowWatermark() throws Exception {
+        SweepReport all = new PressureRelief(".repository", dispositions, 0, true).invoke(jobs, null);
+        SweepReport none = new PressureRelief(".repository", dispositions, 100, true).invoke(jobs, null);
+
+        assertEquals(3, all.getEntries(SweepReport.Outcome.PLANNED).size());
+        assertEquals(0, none.getEntries().size());
+        assertTrue(new File(jobs, "unknown/.repository").isDirectory());
+    }
+
+    @Test
+    public void usage() {
+        int used = new PressureRelief.Usage().invoke(jobs, null);
+
+        assertTrue(String.valueOf(used), used >= 0 && used <= 100);
+    }
+
+    private void repository(String job, long lastModified) throws IOException {
+        File repo = new File(jobs, job + "/.repository");
+        Files.createDirectories(repo.toPath().resolve("org/a/1.0"));
+        Files.write(repo.toPath().resolve("org/a/1.0/a-1.0.jar"), new byte[100]);
+        assertTrue(repo.setLastModified(lastModified));
+    }
+}
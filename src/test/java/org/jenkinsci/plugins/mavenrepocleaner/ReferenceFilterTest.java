@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReferenceFilterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void noFalseNegatives() {
+        ReferenceFilter filter = new ReferenceFilter();
+        for (int i = 0; i < 10000; i++) {
+            filter.add(location(i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(location(i), filter.mightContain(location(i)));
+        }
+    }
+
+    @Test
+    public void fewFalsePositives() {
+        ReferenceFilter filter = new ReferenceFilter();
+        for (int i = 0; i < 10000; i++) {
+            filter.add(location(i));
+        }
+        int positives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (filter.mightContain(location(i))) {
+                positives++;
+            }
+        }
+        assertTrue(positives + " false positives", positives < 100);
+        assertFalse(new ReferenceFilter().mightContain(location(0)));
+    }
+
+    @Test
+    public void mergeKeepsBoth() {
+        ReferenceFilter a = new ReferenceFilter();
+        a.add("/org/a/1.0/");
+        ReferenceFilter b = new ReferenceFilter();
+        b.add("/org/b/1.0/");
+
+        a.merge(b);
+
+        assertTrue(a.mightContain("/org/a/1.0/"));
+        assertTrue(a.mightContain("/org/b/1.0/"));
+        assertFalse(b.mightContain("/org/a/1.0/"));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        ReferenceFilter filter = new ReferenceFilter();
+        for (int i = 0; i < 1000; i++) {
+            filter.add(location(i));
+        }
+        File file = new File(tmp.getRoot(), "build.bloom");
+
+        filter.write(file);
+        ReferenceFilter read = ReferenceFilter.read(file.toPath());
+
+        assertNotNull(read);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(location(i), read.mightContain(location(i)));
+        }
+        assertFalse(new File(tmp.getRoot(), "build.bloom.tmp").exists());
+    }
+
+    @Test
+    public void readReturnsNullForOtherFiles() throws IOException {
+        File file = tmp.newFile("truncated.bloom");
+        Files.write(file.toPath(), new byte[ReferenceFilter.BITS / 8 - 1]);
+
+        assertNull(ReferenceFilter.read(file.toPath()));
+    }
+
+    private static String location(int i) {
+        return "/org/group" + i % 97 + "/artifact" + i + "/1." + i % 10 + "/";
+    }
+}
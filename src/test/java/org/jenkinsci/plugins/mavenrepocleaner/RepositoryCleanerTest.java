@@ -0,0 +1,165 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RepositoryCleanerTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long OLD = NOW - TimeUnit.DAYS.toMillis(30);
+    private static final long CUTOFF = NOW - TimeUnit.DAYS.toMillis(7);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() {
+        root = tmp.getRoot().toPath();
+    }
+
+    @Test
+    public void removesArtifactsNotAccessedSince() throws IOException {
+        artifact("org/a/1.0/a-1.0.jar", OLD);
+        file("org/a/1.0/a-1.0.jar.sha1", OLD);
+        artifact("org/a/1.0/a-1.0.pom", OLD);
+        artifact("org/b/1.0/b-1.0.jar", NOW);
+        file("org/b/1.0/b-1.0.jar.sha1", OLD);
+
+        Collection<String> removed = new RepositoryCleaner(CUTOFF).clean(root.toFile());
+
+        assertEquals(2, removed.size());
+        assertTrue(removed.contains("/org/a/1.0/a-1.0.jar"));
+        assertTrue(removed.contains("/org/a/1.0/a-1.0.pom"));
+        // directories left with nothing go too, up to the repository itself
+        assertFalse(Files.exists(root.resolve("org/a")));
+        assertTrue(Files.exists(root.resolve("org/b/1.0/b-1.0.jar")));
+        assertTrue(Files.exists(root.resolve("org/b/1.0/b-1.0.jar.sha1")));
+        assertTrue(Files.isDirectory(root));
+    }
+
+    @Test
+    public void keepsWhatIsNotAnArtifact() throws IOException {
+        artifact("org/a/1.0/a-1.0.jar", OLD);
+        file("org/a/1.0/notes.txt", OLD);
+        file("org/a/1.0/_remote.repositories", OLD);
+
+        Collection<String> removed = new RepositoryCleaner(CUTOFF).clean(root.toFile());
+
+        assertEquals(Collections.singletonList("/org/a/1.0/a-1.0.jar"), removed);
+        assertTrue(Files.exists(root.resolve("org/a/1.0/notes.txt")));
+        assertTrue(Files.exists(root.resolve("org/a/1.0/_remote.repositories")));
+    }
+
+    @Test
+    public void removesMetadataLeftAlone() throws IOException {
+        artifact("org/a/1.0/a-1.0.jar", OLD);
+        file("org/a/1.0/_remote.repositories", OLD);
+        file("org/a/maven-metadata-central.xml", OLD);
+
+        new RepositoryCleaner(CUTOFF).clean(root.toFile());
+
+        assertFalse(Files.exists(root.resolve("org")));
+    }
+
+    @Test
+    public void parallelSweepRemovesTheSame() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            artifact("org/g" + i + "/a/1.0/a-1.0.jar", OLD);
+            artifact("org/g" + i + "/b/1.0/b-1.0.jar", NOW);
+        }
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setParallelism(4);
+
+        Collection<String> removed = cleaner.clean(root.toFile());
+
+        assertEquals(5, removed.size());
+        for (int i = 0; i < 5; i++) {
+            assertFalse(Files.exists(root.resolve("org/g" + i + "/a")));
+            assertTrue(Files.exists(root.resolve("org/g" + i + "/b/1.0/b-1.0.jar")));
+        }
+    }
+
+    @Test
+    public void incrementalSweepStillSeesArtifactsExpire() throws IOException {
+        Path jar = artifact("org/a/1.0/a-1.0.jar", NOW);
+        file("org/a/1.0/a-1.0.jar.sha1", OLD);
+        artifact("org/b/1.0/b-1.0.jar", NOW);
+        ageDirectories();
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setIncremental(true);
+
+        assertTrue(cleaner.clean(root.toFile()).isEmpty());
+        assertTrue(Files.exists(root.resolve(RepositoryIndex.FILE_NAME)));
+
+        // reading an artifact doesn't change its directory, the index must not hide it
+        setTimes(jar, OLD);
+        Collection<String> removed = cleaner.clean(root.toFile());
+
+        assertEquals(Collections.singletonList("/org/a/1.0/a-1.0.jar"), removed);
+        assertFalse(Files.exists(root.resolve("org/a")));
+        assertTrue(Files.exists(root.resolve("org/b/1.0/b-1.0.jar")));
+    }
+
+    @Test
+    public void dryRunRemovesNothing() throws IOException {
+        artifact("org/a/1.0/a-1.0.jar", OLD);
+        RepositoryCleaner cleaner = new RepositoryCleaner(CUTOFF);
+        cleaner.setDryRun(true);
+
+        assertEquals(Collections.singletonList("/org/a/1.0/a-1.0.jar"), cleaner.clean(root.toFile()));
+
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.jar")));
+        assertEquals(1, cleaner.getPlan().getArtifacts());
+    }
+
+    private Path artifact(String path, long accessed) throws IOException {
+        Path file = file(path, OLD);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(null, FileTime.fromMillis(accessed), null);
+        return file;
+    }
+
+    private Path file(String path, long time) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[1]);
+        setTimes(file, time);
+        return file;
+    }
+
+    private static void setTimes(Path file, long time) throws IOException {
+        Files.getFileAttributeView(file, BasicFileAttributeView.class)
+                .setTimes(FileTime.fromMillis(time), FileTime.fromMillis(time), null);
+    }
+
+    /**
+     * Directories modified right before the sweep can't be taken from the index.
+     */
+    private void ageDirectories() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.setLastModifiedTime(dir, FileTime.fromMillis(OLD));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,129 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RepositoryDeleterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File jobs;
+    private File repository;
+
+    @Before
+    public void setUp() throws IOException {
+        jobs = tmp.newFolder("jobs");
+        repository = new File(jobs, "repository");
+        file("org/a/1.0/a-1.0.jar");
+        file("org/a/1.0/a-1.0.jar.sha1");
+        file("org/b/1.0/b-1.0.jar");
+    }
+
+    @Test
+    public void deletesThrottled() throws IOException {
+        RepositoryDeleter deleter = new RepositoryDeleter(0, IoThrottle.of(10000, false, 0));
+
+        deleter.delete(repository);
+
+        assertFalse(repository.exists());
+    }
+
+    @Test
+    public void movesToTrashAndPurgesInTheBackground() throws Exception {
+        RepositoryDeleter deleter = new RepositoryDeleter(1000, IoThrottle.NONE);
+        assertTrue(deleter.isDeferred());
+
+        deleter.delete(repository);
+
+        assertFalse(repository.exists());
+        awaitNoTrash();
+    }
+
+    @Test
+    public void purgesLeftoverTrash() throws Exception {
+        File trash = new File(jobs, "repository" + RepositoryDeleter.TRASH + "1");
+        assertTrue(repository.renameTo(trash));
+        File other = new File(jobs, "other" + RepositoryDeleter.TRASH + "1");
+        assertTrue(other.mkdir());
+
+        new RepositoryDeleter(1000, IoThrottle.NONE).purgeLeftovers(repository);
+
+        awaitNoTrash();
+        assertTrue(other.isDirectory());
+    }
+
+    @Test
+    public void seedsTheJobFromTheWarmPool() throws IOException {
+        setTimes(new File(repository, "org/a/1.0/a-1.0.jar").toPath(), System.currentTimeMillis());
+        setTimes(new File(repository, "org/b/1.0/b-1.0.jar").toPath(), 0);
+        Path pool = tmp.getRoot().toPath().resolve("pool");
+        RepositoryDeleter deleter = new RepositoryDeleter(0, IoThrottle.of(10000, false, 0));
+        deleter.setPool(new WarmPool(pool.toString(), 7, Collections.singleton("job")));
+
+        deleter.delete(repository, "job");
+
+        assertTrue(new File(repository, "org/a/1.0/a-1.0.jar").exists());
+        assertTrue(new File(repository, "org/a/1.0/a-1.0.jar.sha1").exists());
+        assertFalse(new File(repository, "org/b").exists());
+        assertTrue(Files.exists(pool.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    @Test
+    public void doesNotSeedDeletedJobs() throws IOException {
+        setTimes(new File(repository, "org/a/1.0/a-1.0.jar").toPath(), System.currentTimeMillis());
+        Path pool = tmp.getRoot().toPath().resolve("pool");
+        RepositoryDeleter deleter = new RepositoryDeleter(0, IoThrottle.of(10000, false, 0));
+        deleter.setPool(new WarmPool(pool.toString(), 7, Collections.singleton("job")));
+
+        deleter.delete(repository, "deleted");
+
+        assertFalse(repository.exists());
+        assertTrue(Files.exists(pool.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    /**
+     * Waits for the purger to be done with the trash of the repository.
+     */
+    private void awaitNoTrash() throws InterruptedException {
+        for (int i = 0; i < 100 && trash() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, trash());
+    }
+
+    private int trash() {
+        int trash = 0;
+        for (String name : jobs.list()) {
+            if (name.startsWith("repository" + RepositoryDeleter.TRASH)) {
+                trash++;
+            }
+        }
+        return trash;
+    }
+
+    private void file(String path) throws IOException {
+        Path file = repository.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+    }
+
+    private static void setTimes(Path file, long time) throws IOException {
+        FileTime t = FileTime.fromMillis(time);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(t, t, null);
+    }
+}
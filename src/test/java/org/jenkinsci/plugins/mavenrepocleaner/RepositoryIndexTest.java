@@ -0,0 +1,157 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RepositoryIndexTest {
+
+    private static final long CREATED = 1000000000000L;
+    private static final long BEFORE = CREATED - 60000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path repository;
+
+    @Before
+    public void setUp() {
+        repository = tmp.getRoot().toPath();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<RepositoryIndex.Directory> directories = new ArrayList<RepositoryIndex.Directory>();
+        // not sorted, the index sorts them for the lookups
+        directories.add(directory("org/b/1.0", BEFORE,
+                new RepositoryIndex.Entry(RepositoryIndex.Kind.ARTIFACT, "b-1.0.jar", 42, BEFORE - 1, BEFORE - 2, true),
+                new RepositoryIndex.Entry(RepositoryIndex.Kind.CHECKSUM, "b-1.0.jar.sha1"),
+                new RepositoryIndex.Entry(RepositoryIndex.Kind.METADATA, "_remote.repositories")));
+        directories.add(directory("", BEFORE, new RepositoryIndex.Entry(RepositoryIndex.Kind.DIRECTORY, "org")));
+        directories.add(directory("org/a", BEFORE - 5, new RepositoryIndex.Entry(RepositoryIndex.Kind.PARTIAL, "a.part")));
+        directories.add(directory("org", BEFORE,
+                new RepositoryIndex.Entry(RepositoryIndex.Kind.DIRECTORY, "a"),
+                new RepositoryIndex.Entry(RepositoryIndex.Kind.DIRECTORY, "b")));
+        RepositoryIndex.write(repository, CREATED, directories);
+
+        RepositoryIndex index = RepositoryIndex.open(repository);
+        for (RepositoryIndex.Directory directory : directories) {
+            RepositoryIndex.Directory read = index.get(directory.path, FileTime.fromMillis(directory.lastModified));
+            assertNotNull(directory.path, read);
+            assertEquals(directory.entries.size(), read.entries.size());
+        }
+
+        RepositoryIndex.Directory version = index.get("org/b/1.0", FileTime.fromMillis(BEFORE));
+        RepositoryIndex.Entry artifact = version.find("b-1.0.jar");
+        assertEquals(RepositoryIndex.Kind.ARTIFACT, artifact.kind);
+        assertEquals(42, artifact.size);
+        assertEquals(BEFORE - 1, artifact.lastModified);
+        assertEquals(BEFORE - 2, artifact.lastAccessed);
+        assertTrue(artifact.verified);
+        assertEquals(RepositoryIndex.Kind.CHECKSUM, version.find("b-1.0.jar.sha1").kind);
+        assertEquals(RepositoryIndex.Kind.METADATA, version.find("_remote.repositories").kind);
+        assertNull(version.find("b-1.0.pom"));
+        assertEquals(RepositoryIndex.Kind.PARTIAL,
+                index.get("org/a", FileTime.fromMillis(BEFORE - 5)).find("a.part").kind);
+    }
+
+    @Test
+    public void unknownDirectory() throws IOException {
+        RepositoryIndex.write(repository, CREATED, Arrays.asList(directory("org/a", BEFORE), directory("org/c", BEFORE)));
+        RepositoryIndex index = RepositoryIndex.open(repository);
+        assertNull(index.get("org/b", FileTime.fromMillis(BEFORE)));
+        assertNull(index.get("org", FileTime.fromMillis(BEFORE)));
+        assertNull(index.get("org/a/b", FileTime.fromMillis(BEFORE)));
+        assertNull(index.getPrevious("org/b"));
+    }
+
+    @Test
+    public void modifiedDirectory() throws IOException {
+        RepositoryIndex.write(repository, CREATED, Arrays.asList(directory("org/a", BEFORE,
+                new RepositoryIndex.Entry(RepositoryIndex.Kind.ARTIFACT, "a-1.jar", 1, BEFORE, BEFORE, false))));
+        RepositoryIndex index = RepositoryIndex.open(repository);
+        assertNull(index.get("org/a", FileTime.fromMillis(BEFORE + 1)));
+        assertNull(index.get("org/a", null));
+        // still tells what the artifacts were
+        RepositoryIndex.Directory previous = index.getPrevious("org/a");
+        assertNotNull(previous);
+        assertEquals(1, previous.find("a-1.jar").size);
+    }
+
+    @Test
+    public void modifiedWithinGranularity() throws IOException {
+        long recent = CREATED - 1000;
+        RepositoryIndex.write(repository, CREATED, Arrays.asList(directory("org/a", recent)));
+        RepositoryIndex index = RepositoryIndex.open(repository);
+        // might have changed again in the same tick
+        assertNull(index.get("org/a", FileTime.fromMillis(recent)));
+        assertFalse(index.isBefore(recent));
+        assertTrue(index.isBefore(BEFORE));
+    }
+
+    @Test
+    public void missing() {
+        RepositoryIndex index = RepositoryIndex.open(repository);
+        assertNull(index.get("", FileTime.fromMillis(BEFORE)));
+        assertNull(index.getPrevious(""));
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        RepositoryIndex.write(repository, CREATED, Arrays.asList(directory("org/a", BEFORE,
+                new RepositoryIndex.Entry(RepositoryIndex.Kind.ARTIFACT, "a-1.jar", 1, BEFORE, BEFORE, false))));
+        Path file = repository.resolve(RepositoryIndex.FILE_NAME);
+        byte[] content = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(content, content.length - 10));
+        assertNull(RepositoryIndex.open(repository).get("org/a", FileTime.fromMillis(BEFORE)));
+
+        Files.write(file, Arrays.copyOf(content, 6));
+        assertNull(RepositoryIndex.open(repository).get("org/a", FileTime.fromMillis(BEFORE)));
+
+        Files.write(file, new byte[0]);
+        assertNull(RepositoryIndex.open(repository).get("org/a", FileTime.fromMillis(BEFORE)));
+    }
+
+    @Test
+    public void otherVersion() throws IOException {
+        RepositoryIndex.write(repository, CREATED, Arrays.asList(directory("org/a", BEFORE)));
+        Path file = repository.resolve(RepositoryIndex.FILE_NAME);
+        byte[] content = Files.readAllBytes(file);
+        content[7]++;
+        Files.write(file, content);
+        assertNull(RepositoryIndex.open(repository).get("org/a", FileTime.fromMillis(BEFORE)));
+    }
+
+    @Test
+    public void replaced() throws IOException {
+        RepositoryIndex.write(repository, CREATED, Arrays.asList(directory("org/a", BEFORE)));
+        RepositoryIndex first = RepositoryIndex.open(repository);
+        RepositoryIndex.write(repository, CREATED, Arrays.asList(directory("org/b", BEFORE)));
+        RepositoryIndex second = RepositoryIndex.open(repository);
+        assertNull(second.get("org/a", FileTime.fromMillis(BEFORE)));
+        assertNotNull(second.get("org/b", FileTime.fromMillis(BEFORE)));
+        // what was read before is not affected
+        assertNotNull(first.get("org/a", FileTime.fromMillis(BEFORE)));
+        assertFalse(Files.exists(repository.resolve(RepositoryIndex.FILE_NAME + ".tmp")));
+    }
+
+    private static RepositoryIndex.Directory directory(String path, long lastModified, RepositoryIndex.Entry... entries) {
+        return new RepositoryIndex.Directory(path, lastModified, Arrays.asList(entries));
+    }
+}
@@ -0,0 +1,190 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedRepositoryTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long OLD = NOW - TimeUnit.DAYS.toMillis(30);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path root;
+    private Path refs;
+
+    @Before
+    public void setUp() throws IOException {
+        root = tmp.newFolder("repository").toPath();
+        refs = root.resolve(SharedRepository.REFS);
+    }
+
+    @Test
+    public void firstSweepOnlyStartsTracking() throws Exception {
+        artifact("org/a/1.0/a-1.0.jar", OLD);
+
+        SweepReport report = sweep(7, Collections.<String>emptySet());
+
+        assertEquals(1, report.getEntries(SweepReport.Outcome.KEPT).size());
+        assertTrue(Files.isDirectory(refs));
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    @Test
+    public void removesWhatNoBuildReferenced() throws Exception {
+        Files.createDirectories(refs);
+        Path a = artifact("org/a/1.0/a-1.0.jar", OLD);
+        artifact("org/b/1.0/b-1.0.jar", OLD);
+        AccessJournal journal = new AccessJournal();
+        journal.record(a.toFile(), "org", "a");
+        journal.flush();
+        // the journal only covers the last cleanup, the filter the whole retention window
+        Files.delete(root.resolve(AccessJournal.FILE_NAME));
+
+        SweepReport report = sweep(7, Collections.<String>emptySet());
+
+        assertEquals(1, report.getEntries(SweepReport.Outcome.TRIMMED).size());
+        assertTrue(Files.exists(a));
+        assertFalse(Files.exists(root.resolve("org/b")));
+        assertTrue(Files.isDirectory(refs));
+    }
+
+    @Test
+    public void keepsItsOwnFiles() throws Exception {
+        Files.createDirectories(refs);
+        artifact("org/a/1.0/a-1.0.jar", OLD);
+        setTimes(refs, OLD);
+        setTimes(Files.createFile(root.resolve(RepositoryIndex.FILE_NAME + ".tmp")), OLD);
+
+        sweep(7, Collections.<String>emptySet());
+
+        assertFalse(Files.exists(root.resolve("org")));
+        assertTrue(Files.isDirectory(refs));
+        assertTrue(Files.exists(root.resolve(RepositoryIndex.FILE_NAME + ".tmp")));
+    }
+
+    @Test
+    public void dropsStaleLeasesAndFilters() throws Exception {
+        Files.createDirectories(refs);
+        Path over = lease("job-1.lease", OLD);
+        Path running = lease("job-2.lease", OLD);
+        Path starting = lease("job-3.lease", NOW);
+        Path expired = refs.resolve("old.bloom");
+        new ReferenceFilter().write(expired.toFile());
+        setTimes(expired, OLD);
+        Path recent = refs.resolve("recent.bloom");
+        new ReferenceFilter().write(recent.toFile());
+
+        new SharedRepository.References(refs, NOW - TimeUnit.DAYS.toMillis(7), Collections.singleton("job-2.lease"));
+
+        assertFalse(Files.exists(over));
+        assertTrue(Files.exists(running));
+        assertTrue(Files.exists(starting));
+        assertFalse(Files.exists(expired));
+        assertTrue(Files.exists(recent));
+    }
+
+    @Test
+    public void keepsWhatRunningBuildsUsedSinceTheyStarted() throws Exception {
+        Files.createDirectories(refs);
+        long started = NOW - TimeUnit.DAYS.toMillis(3);
+        lease("job-1.lease", started);
+        Path used = artifact("org/a/1.0/a-1.0.jar", started + TimeUnit.HOURS.toMillis(1));
+        Path unused = artifact("org/b/1.0/b-1.0.jar", started - TimeUnit.HOURS.toMillis(1));
+
+        SharedRepository.References references = new SharedRepository.References(refs,
+                NOW - TimeUnit.DAYS.toMillis(1), Collections.singleton("job-1.lease"));
+        assertEquals(started / 1000, references.getLeasedSince() / 1000);
+
+        sweep(1, Collections.singleton("job-1.lease"));
+
+        assertTrue(Files.exists(used));
+        assertFalse(Files.exists(unused));
+    }
+
+    @Test
+    public void picksUpBuildsThatStartDuringTheSweep() throws Exception {
+        Files.createDirectories(refs);
+        setTimes(refs, OLD);
+        SharedRepository.References references = new SharedRepository.References(refs, NOW,
+                Collections.<String>emptySet());
+        assertEquals(Long.MAX_VALUE, references.getLeasedSince());
+        assertFalse(references.isReferenced("/org/a/1.0/"));
+
+        Path a = artifact("org/a/1.0/a-1.0.jar", OLD);
+        AccessJournal journal = new AccessJournal();
+        journal.record(a.toFile(), "org", "a");
+        journal.flush();
+        lease("job-1.lease", NOW);
+        // refreshed at most once a second
+        Thread.sleep(1100);
+
+        assertTrue(references.isReferenced("/org/a/1.0/"));
+        assertEquals(NOW / 1000, references.getLeasedSince() / 1000);
+    }
+
+    @Test
+    public void dryRunRemovesNothing() throws Exception {
+        Files.createDirectories(refs);
+        artifact("org/a/1.0/a-1.0.jar", OLD);
+
+        SweepReport report = new SharedRepository.Sweep(root.toString(), 7, Collections.<String>emptySet(),
+                IoThrottle.NONE, true).invoke(null, null);
+
+        assertEquals(1, report.getEntries(SweepReport.Outcome.PLANNED).size());
+        assertTrue(Files.exists(root.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    @Test
+    public void leases() throws Exception {
+        String name = SharedRepository.leaseName("folder/job", 42);
+        assertEquals("folder_job-42.lease", name);
+
+        new SharedRepository.Lease(root.toString(), name, true).invoke(null, null);
+        assertTrue(Files.exists(refs.resolve(name)));
+
+        new SharedRepository.Lease(root.toString(), name, false).invoke(null, null);
+        assertFalse(Files.exists(refs.resolve(name)));
+    }
+
+    private SweepReport sweep(int retentionDays, Set<String> running) throws Exception {
+        return new SharedRepository.Sweep(root.toString(), retentionDays, running, IoThrottle.NONE, false)
+                .invoke(null, null);
+    }
+
+    private Path lease(String name, long time) throws IOException {
+        Path lease = Files.createFile(refs.resolve(name));
+        setTimes(lease, time);
+        return lease;
+    }
+
+    private Path artifact(String path, long time) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+        setTimes(file, time);
+        return file;
+    }
+
+    private static void setTimes(Path file, long time) throws IOException {
+        FileTime t = FileTime.fromMillis(time);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(t, t, null);
+    }
+}
@@ -0,0 +1,176 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotPruningTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final List<String> METADATA = Collections.singletonList("maven-metadata-central.xml");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath().resolve("org/a/1.0-SNAPSHOT");
+        Files.createDirectories(dir);
+    }
+
+    @Test
+    public void snapshotDirectory() {
+        assertTrue(SnapshotPruning.isSnapshotDirectory(Paths.get("org/a/1.0-SNAPSHOT")));
+        assertFalse(SnapshotPruning.isSnapshotDirectory(Paths.get("org/a/1.0")));
+        assertFalse(SnapshotPruning.isSnapshotDirectory(Paths.get("1.0-SNAPSHOT")));
+        assertTrue(SnapshotPruning.isMetadata("maven-metadata-central.xml"));
+        assertFalse(SnapshotPruning.isMetadata("maven-metadata-central.xml.sha1"));
+    }
+
+    @Test
+    public void expiresAllButTheLatestBuilds() {
+        List<String> artifacts = Arrays.asList(
+                "a-1.0-20120601.101500-1.jar", "a-1.0-20120601.101500-1.pom",
+                "a-1.0-20120602.101500-2.jar", "a-1.0-20120602.101500-2-sources.jar",
+                "a-1.0-20120603.101500-3.jar", "a-1.0-20120603.101500-3.pom",
+                "a-1.0-SNAPSHOT.jar", "b-1.0-20120601.101500-1.jar");
+
+        List<String> expired = new SnapshotPruning(dir, Collections.<String>emptyList()).expired(artifacts, 1);
+
+        assertEquals(Arrays.asList(
+                "a-1.0-20120601.101500-1.jar", "a-1.0-20120601.101500-1.pom",
+                "a-1.0-20120602.101500-2.jar", "a-1.0-20120602.101500-2-sources.jar"), expired);
+    }
+
+    @Test
+    public void nothingExpiresWithinRetention() {
+        List<String> artifacts = Arrays.asList("a-1.0-20120601.101500-1.jar", "a-1.0-20120602.101500-2.jar");
+
+        assertTrue(new SnapshotPruning(dir, METADATA).expired(artifacts, 2).isEmpty());
+    }
+
+    @Test
+    public void buildNumbersCompareAsNumbers() {
+        List<String> artifacts = Arrays.asList("a-1.0-20120601.101500-10.jar", "a-1.0-20120601.101500-9.jar");
+
+        List<String> expired = new SnapshotPruning(dir, Collections.<String>emptyList()).expired(artifacts, 1);
+
+        assertEquals(Collections.singletonList("a-1.0-20120601.101500-9.jar"), expired);
+    }
+
+    @Test
+    public void keepsTheBuildsTheMetadataPointsAt() throws IOException {
+        metadata("20120601.101500", 1, "1.0-20120602.101500-2");
+        List<String> artifacts = Arrays.asList("a-1.0-20120601.101500-1.jar", "a-1.0-20120602.101500-2.jar",
+                "a-1.0-20120603.101500-3.jar", "a-1.0-20120604.101500-4.jar");
+
+        List<String> expired = new SnapshotPruning(dir, METADATA).expired(artifacts, 1);
+
+        assertEquals(Collections.singletonList("a-1.0-20120603.101500-3.jar"), expired);
+    }
+
+    @Test
+    public void ignoresMetadataThatCannotBeRead() throws IOException {
+        Files.write(dir.resolve(METADATA.get(0)), "not metadata".getBytes(UTF8));
+        List<String> artifacts = Arrays.asList("a-1.0-20120601.101500-1.jar", "a-1.0-20120602.101500-2.jar");
+
+        List<String> expired = new SnapshotPruning(dir, METADATA).expired(artifacts, 1);
+
+        assertEquals(Collections.singletonList("a-1.0-20120601.101500-1.jar"), expired);
+    }
+
+    @Test
+    public void rewriteDropsRemovedVersionsAndUpdatesChecksums() throws Exception {
+        Path metadata = metadata("20120602.101500", 2, "1.0-20120601.101500-1", "1.0-20120602.101500-2");
+        Path sha1 = dir.resolve(METADATA.get(0) + ".sha1");
+        Files.write(sha1, "0".getBytes(UTF8));
+
+        new SnapshotPruning(dir, METADATA).rewrite(Collections.singletonList("a-1.0-20120601.101500-1.jar"));
+
+        String content = new String(Files.readAllBytes(metadata), UTF8);
+        assertFalse(content.contains("1.0-20120601.101500-1"));
+        assertTrue(content.contains("1.0-20120602.101500-2"));
+        assertEquals(sha1(Files.readAllBytes(metadata)), new String(Files.readAllBytes(sha1), UTF8));
+        assertFalse(Files.exists(dir.resolve(METADATA.get(0) + ".md5")));
+        assertFalse(Files.exists(dir.resolve(METADATA.get(0) + ".tmp")));
+    }
+
+    @Test
+    public void rewriteLeavesUnaffectedMetadataAlone() throws IOException {
+        Path metadata = metadata("20120602.101500", 2, "1.0-20120602.101500-2");
+        byte[] before = Files.readAllBytes(metadata);
+
+        new SnapshotPruning(dir, METADATA).rewrite(Collections.singletonList("a-1.0-20120601.101500-1.jar"));
+
+        assertTrue(Arrays.equals(before, Files.readAllBytes(metadata)));
+    }
+
+    @Test
+    public void cleanerPrunesOldBuildsOfRecentSnapshots() throws IOException {
+        long now = System.currentTimeMillis();
+        metadata("20120602.101500", 2, "1.0-20120602.101500-2");
+        for (String name : new String[] { "a-1.0-20120601.101500-1.jar", "a-1.0-20120602.101500-2.jar",
+                "a-1.0-20120603.101500-3.jar", "a-1.0-20120604.101500-4.jar" }) {
+            Files.createFile(dir.resolve(name));
+        }
+        RepositoryCleaner cleaner = new RepositoryCleaner(now - TimeUnit.DAYS.toMillis(7));
+        cleaner.setSnapshotRetention(1);
+
+        Collection<String> removed = cleaner.clean(tmp.getRoot());
+
+        // build 2 is the one the metadata resolves, build 4 the latest
+        assertEquals(Arrays.asList("/org/a/1.0-SNAPSHOT/a-1.0-20120601.101500-1.jar",
+                "/org/a/1.0-SNAPSHOT/a-1.0-20120603.101500-3.jar"), sorted(removed));
+        assertTrue(Files.exists(dir.resolve("a-1.0-20120602.101500-2.jar")));
+        assertTrue(Files.exists(dir.resolve("a-1.0-20120604.101500-4.jar")));
+    }
+
+    private Path metadata(String timestamp, int buildNumber, String... values) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metadata>\n")
+                .append("  <groupId>org</groupId>\n  <artifactId>a</artifactId>\n  <version>1.0-SNAPSHOT</version>\n")
+                .append("  <versioning>\n    <snapshot>\n      <timestamp>").append(timestamp)
+                .append("</timestamp>\n      <buildNumber>").append(buildNumber).append("</buildNumber>\n    </snapshot>\n")
+                .append("    <lastUpdated>20120604101500</lastUpdated>\n    <snapshotVersions>\n");
+        for (String value : values) {
+            xml.append("      <snapshotVersion>\n        <extension>jar</extension>\n        <value>").append(value)
+                    .append("</value>\n        <updated>20120604101500</updated>\n      </snapshotVersion>\n");
+        }
+        xml.append("    </snapshotVersions>\n  </versioning>\n</metadata>\n");
+        return Files.write(dir.resolve(METADATA.get(0)), xml.toString().getBytes(UTF8));
+    }
+
+    private static List<String> sorted(Collection<String> names) {
+        List<String> sorted = new ArrayList<String>(names);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static String sha1(byte[] content) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.mavenrepocleaner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WarmPoolTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long RECENT = NOW - TimeUnit.DAYS.toMillis(1);
+    private static final long OLD = NOW - TimeUnit.DAYS.toMillis(30);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path repo;
+    private Path poolDir;
+    private WarmPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        repo = tmp.newFolder("repository").toPath();
+        poolDir = tmp.getRoot().toPath().resolve("pool");
+        pool = new WarmPool(poolDir.toString(), 7, Collections.singleton("job"));
+    }
+
+    @Test
+    public void seedsOnlyJobsThatStillExist() {
+        assertTrue(pool.seeds("job"));
+        assertFalse(pool.seeds("deleted"));
+        assertFalse(pool.seeds(null));
+    }
+
+    @Test
+    public void savesTheReleasesUsedLately() throws IOException {
+        file("org/a/1.0/a-1.0.jar", RECENT);
+        file("org/a/1.0/a-1.0.jar.sha1", OLD);
+        file("org/b/1.0/b-1.0.jar", OLD);
+        file("org/c/1.0-SNAPSHOT/c-1.0-SNAPSHOT.jar", RECENT);
+        file("org/c/1.0/notes.txt", RECENT);
+        file("org/c/1.0/c-1.0.jar.lastUpdated", RECENT);
+
+        List<String> saved = pool.save(repo.toFile());
+
+        assertEquals(Collections.singletonList("org/a/1.0/a-1.0.jar"), saved);
+        assertTrue(Files.exists(poolDir.resolve("org/a/1.0/a-1.0.jar")));
+        assertTrue(Files.exists(poolDir.resolve("org/a/1.0/a-1.0.jar.sha1")));
+        assertFalse(Files.exists(repo.resolve("org/a/1.0/a-1.0.jar")));
+        assertFalse(Files.exists(poolDir.resolve("org/b")));
+        assertFalse(Files.exists(poolDir.resolve("org/c")));
+    }
+
+    @Test
+    public void seedsWhatWasSaved() throws IOException {
+        file("org/a/1.0/a-1.0.jar", RECENT);
+        file("org/a/1.0/a-1.0.jar.sha1", OLD);
+        List<String> saved = pool.save(repo.toFile());
+        // the repository as it is once deleted
+        Path deleted = tmp.newFolder("deleted").toPath();
+
+        assertEquals(1, pool.seed(deleted.toFile(), saved));
+
+        assertTrue(Files.exists(deleted.resolve("org/a/1.0/a-1.0.jar.sha1")));
+        assertTrue(Files.isSameFile(deleted.resolve("org/a/1.0/a-1.0.jar"), poolDir.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    @Test
+    public void keepsWhatIsAlreadyPooled() throws IOException {
+        file("org/a/1.0/a-1.0.jar", RECENT);
+        pool.save(repo.toFile());
+        Path other = tmp.newFolder("other").toPath();
+        Path copy = other.resolve("org/a/1.0/a-1.0.jar");
+        Files.createDirectories(copy.getParent());
+        Files.write(copy, new byte[] { 1 });
+        setTimes(copy, RECENT);
+
+        List<String> saved = pool.save(other.toFile());
+
+        // the repository is seeded with the pooled copy, its own goes with it
+        assertEquals(Collections.singletonList("org/a/1.0/a-1.0.jar"), saved);
+        assertTrue(Files.exists(copy));
+        assertEquals(0, Files.size(poolDir.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    @Test
+    public void seedLeavesOutWhatWasPurged() throws IOException {
+        file("org/a/1.0/a-1.0.jar", RECENT);
+        List<String> saved = pool.save(repo.toFile());
+        Files.delete(poolDir.resolve("org/a/1.0/a-1.0.jar"));
+
+        assertEquals(0, pool.seed(repo.toFile(), saved));
+        assertFalse(Files.exists(repo.resolve("org/a/1.0/a-1.0.jar")));
+    }
+
+    @Test
+    public void purgeDropsWhatNoJobUsedLately() throws IOException {
+        file("org/a/1.0/a-1.0.jar", RECENT);
+        file("org/b/1.0/b-1.0.jar", RECENT);
+        file("org/b/1.0/b-1.0.jar.sha1", RECENT);
+        pool.save(repo.toFile());
+        setTimes(poolDir.resolve("org/b/1.0/b-1.0.jar"), OLD);
+
+        assertEquals(1, (int) new WarmPool.Purge(pool).invoke(null, null));
+
+        assertTrue(Files.exists(poolDir.resolve("org/a/1.0/a-1.0.jar")));
+        assertFalse(Files.exists(poolDir.resolve("org/b")));
+        assertTrue(Files.isDirectory(poolDir));
+    }
+
+    private Path file(String path, long accessed) throws IOException {
+        Path file = repo.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+        setTimes(file, accessed);
+        return file;
+    }
+
+    private static void setTimes(Path file, long time) throws IOException {
+        FileTime t = FileTime.fromMillis(time);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(t, t, null);
+    }
+}